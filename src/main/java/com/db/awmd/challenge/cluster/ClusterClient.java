@@ -0,0 +1,91 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Reservation;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.TransferException;
+import jakarta.validation.ValidationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Calls the other cluster nodes. Client errors of the remote node are rethrown as {@link ValidationException},
+ * other failures as {@link TransferException}.
+ */
+@Component
+public class ClusterClient {
+
+    private final RestTemplate restTemplate;
+
+    @Autowired
+    public ClusterClient(ClusterProperties clusterProperties) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(clusterProperties.getRequestTimeoutMillis());
+        requestFactory.setReadTimeout(clusterProperties.getRequestTimeoutMillis());
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    public void createAccount(ClusterProperties.Node node, Account account) {
+        try {
+            call(() -> restTemplate.postForEntity(node.getUrl() + "/v1/accounts", account, String.class), node);
+        } catch (ValidationException e) {
+            throw new DuplicateAccountIdException(e.getMessage());
+        }
+    }
+
+    public Account getAccount(ClusterProperties.Node node, String accountId) {
+        return call(() -> restTemplate.getForObject(node.getUrl() + "/v1/accounts/{accountId}", Account.class,
+                accountId), node);
+    }
+
+    public void transfer(ClusterProperties.Node node, Transfer transfer) {
+        call(() -> restTemplate.exchange(node.getUrl() + "/v1/accounts/transfer", HttpMethod.PUT,
+                new HttpEntity<>(transfer), String.class), node);
+    }
+
+    public void reserve(ClusterProperties.Node node, Reservation reservation) {
+        call(() -> restTemplate.exchange(node.getUrl() + "/v1/cluster/reservations", HttpMethod.PUT,
+                new HttpEntity<>(reservation), String.class), node);
+    }
+
+    public void commit(ClusterProperties.Node node, String transferId) {
+        call(() -> restTemplate.exchange(node.getUrl() + "/v1/cluster/reservations/{transferId}/commit",
+                HttpMethod.PUT, null, String.class, transferId), node);
+    }
+
+    public void abort(ClusterProperties.Node node, String transferId) {
+        call(() -> restTemplate.exchange(node.getUrl() + "/v1/cluster/reservations/{transferId}/abort",
+                HttpMethod.PUT, null, String.class, transferId), node);
+    }
+
+    public TransferDecision getDecision(ClusterProperties.Node node, String transferId) {
+        return call(() -> restTemplate.getForObject(node.getUrl() + "/v1/cluster/decisions/{transferId}",
+                TransferDecision.class, transferId), node);
+    }
+
+    private <T> T call(RemoteCall<T> remoteCall, ClusterProperties.Node node) {
+        try {
+            return remoteCall.call();
+        } catch (HttpStatusCodeException e) {
+            if (e.getStatusCode() == HttpStatus.BAD_REQUEST) {
+                throw new ValidationException(e.getResponseBodyAsString());
+            }
+            throw new TransferException("Node " + node.getId() + " failed: " + e.getResponseBodyAsString());
+        } catch (ResourceAccessException e) {
+            throw new TransferException("Node " + node.getId() + " is not reachable: " + e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface RemoteCall<T> {
+        T call();
+    }
+}
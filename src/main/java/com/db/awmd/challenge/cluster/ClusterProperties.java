@@ -0,0 +1,103 @@
+package com.db.awmd.challenge.cluster;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Cluster mode settings. Every node owns the account ids from its {@code rangeStart} (inclusive) up to the
+ * {@code rangeStart} of the next node (exclusive), in the lexicographic order.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+    private boolean enabled;
+
+    private String nodeId;
+
+    private List<Node> nodes = new ArrayList<>();
+
+    /**
+     * Directory of the reservation and decision journals, {@code cluster-<nodeId>} in the working directory if not set
+     */
+    private String journalDir;
+
+    /**
+     * Reservations which are prepared for longer are resolved with the coordinator
+     */
+    private long inDoubtTimeoutMillis = 5000;
+
+    private long resolveIntervalMillis = 1000;
+
+    /**
+     * Presumed aborts are forgotten after this time, it has to be longer than any transfer can take
+     */
+    private long decisionRetentionMillis = 60000;
+
+    private int requestTimeoutMillis = 2000;
+
+    /**
+     * @return the node which owns the account
+     */
+    public Node ownerOf(String accountId) {
+        Node owner = null;
+        for (Node node : nodes) {
+            if (node.getRangeStart().compareTo(accountId) <= 0
+                    && (owner == null || node.getRangeStart().compareTo(owner.getRangeStart()) > 0)) {
+                owner = node;
+            }
+        }
+        if (owner == null) {
+            owner = nodes.stream().min(Comparator.comparing(Node::getRangeStart)).orElseThrow(
+                    () -> new IllegalStateException("Cluster has no nodes"));
+        }
+        return owner;
+    }
+
+    /**
+     * @param journal name of the journal, e.g. reservations
+     * @return path of the journal of this node, its directory is created if it does not exist
+     */
+    public Path journalPath(String journal) {
+        Path directory = Paths.get(journalDir == null || journalDir.isEmpty() ? "cluster-" + nodeId : journalDir);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal directory " + directory + " can not be created", e);
+        }
+        return directory.resolve("moneyTransfer-" + nodeId + "-" + journal + ".journal");
+    }
+
+    public boolean isLocal(Node node) {
+        return node.getId().equals(nodeId);
+    }
+
+    public Node getNode(String id) {
+        return nodes.stream().filter(node -> node.getId().equals(id)).findFirst().orElseThrow(
+                () -> new IllegalArgumentException("Unknown cluster node " + id));
+    }
+
+    @Data
+    public static class Node {
+
+        private String id;
+
+        /**
+         * Base url, e.g. http://localhost:18080
+         */
+        private String url;
+
+        private String rangeStart = "";
+    }
+}
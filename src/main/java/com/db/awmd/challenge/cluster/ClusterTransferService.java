@@ -0,0 +1,309 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Reservation;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.TransferException;
+import com.db.awmd.challenge.repository.FileJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.validator.TransferInitialValidator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ValidationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.validation.BindException;
+import org.springframework.validation.Errors;
+import org.springframework.validation.ObjectError;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Routes the account requests to the node which owns the account and coordinates the transfers between
+ * accounts of different nodes with the two phase reserve/commit protocol:
+ * <ol>
+ * <li>the debit and the credit are reserved on the owners ({@link ReservationService}),</li>
+ * <li>the decision is written to the journal of this (coordinator) node,</li>
+ * <li>both reservations are committed, or aborted if any of them failed.</li>
+ * </ol>
+ * A participant which does not hear the outcome asks the coordinator, an unknown transfer is presumed aborted
+ * (and recorded as such, so it can not be committed later). The presumed aborts are forgotten after the decision
+ * retention period. Committed transfers which were not completed before
+ * a crash are committed again after the restart.
+ */
+@Service
+@Slf4j
+public class ClusterTransferService {
+
+    private static final String DECIDED = "D";
+    private static final String COMPLETED = "E";
+    private static final String SEPARATOR = "\t";
+
+    private final ClusterProperties clusterProperties;
+
+    private final AccountsService accountsService;
+
+    private final ReservationService reservationService;
+
+    private final ClusterClient clusterClient;
+
+    @Autowired
+    private TransferInitialValidator transferInitialValidator;
+
+    private final Map<String, TransferDecision> decisions = new ConcurrentHashMap<>();
+
+    /**
+     * Committed transfers whose participants have not confirmed the commit yet, transfer id to participant node ids
+     */
+    private final Map<String, String[]> pendingCommits = new ConcurrentHashMap<>();
+
+    /**
+     * Aborted transfers whose participants are not known, transfer id to the time of the decision
+     */
+    private final Map<String, Long> presumedAborts = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService resolver = Executors.newSingleThreadScheduledExecutor();
+
+    private FileJournal journal;
+
+    @Autowired
+    public ClusterTransferService(ClusterProperties clusterProperties, AccountsService accountsService,
+                                  ReservationService reservationService, ClusterClient clusterClient) {
+        this.clusterProperties = clusterProperties;
+        this.accountsService = accountsService;
+        this.reservationService = reservationService;
+        this.clusterClient = clusterClient;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!clusterProperties.isEnabled()) {
+            return;
+        }
+        journal = new FileJournal(clusterProperties.journalPath("decisions"));
+        Map<String, String> undecided = new LinkedHashMap<>();
+        for (String record : journal.readAll()) {
+            String[] fields = record.split(SEPARATOR, 2);
+            if (DECIDED.equals(fields[0])) {
+                undecided.put(fields[1].split(SEPARATOR)[0], fields[1]);
+            } else {
+                undecided.remove(fields[1]);
+            }
+        }
+        for (String decision : undecided.values()) {
+            String[] fields = decision.split(SEPARATOR);
+            decisions.put(fields[0], TransferDecision.valueOf(fields[1]));
+            if (TransferDecision.COMMITTED.name().equals(fields[1])) {
+                pendingCommits.put(fields[0], new String[]{fields[2], fields[3]});
+            } else {
+                presumedAborts.put(fields[0], System.currentTimeMillis());
+            }
+        }
+        journal.rewrite(undecided.values().stream().map(decision -> DECIDED + SEPARATOR + decision)
+                .collect(Collectors.toList()));
+        log.info("Node {} recovered {} decisions, {} commits are pending", clusterProperties.getNodeId(),
+                decisions.size(), pendingCommits.size());
+
+        resolver.scheduleWithFixedDelay(this::resolve, clusterProperties.getResolveIntervalMillis(),
+                clusterProperties.getResolveIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        resolver.shutdownNow();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return clusterProperties.isEnabled();
+    }
+
+    public void createAccount(Account account) {
+        ClusterProperties.Node owner = clusterProperties.ownerOf(account.getAccountId());
+        if (clusterProperties.isLocal(owner)) {
+            accountsService.createAccount(account);
+        } else {
+            clusterClient.createAccount(owner, account);
+        }
+    }
+
+    public Account getAccount(String accountId) {
+        ClusterProperties.Node owner = clusterProperties.ownerOf(accountId);
+        return clusterProperties.isLocal(owner)
+                ? accountsService.getAccount(accountId)
+                : clusterClient.getAccount(owner, accountId);
+    }
+
+    public void transfer(String accountFromId, String accountToId, BigDecimal amountToTransfer) {
+        Transfer transfer = new Transfer(accountFromId, accountToId, amountToTransfer);
+        Errors errors = new BindException(transfer, "transfer");
+        transferInitialValidator.validate(transfer, errors);
+        if (errors.hasErrors()) {
+            throw new ValidationException("Error list is: " + errors.getAllErrors().stream()
+                    .map(ObjectError::getCode).collect(Collectors.joining(",")));
+        }
+
+        ClusterProperties.Node fromOwner = clusterProperties.ownerOf(accountFromId);
+        ClusterProperties.Node toOwner = clusterProperties.ownerOf(accountToId);
+        if (fromOwner.getId().equals(toOwner.getId())) {
+            if (clusterProperties.isLocal(fromOwner)) {
+                accountsService.transfer(accountFromId, accountToId, amountToTransfer);
+            } else {
+                clusterClient.transfer(fromOwner, transfer);
+            }
+            return;
+        }
+
+        String transferId = clusterProperties.getNodeId() + "-" + UUID.randomUUID();
+        try {
+            reserve(fromOwner, new Reservation(transferId, accountFromId, amountToTransfer,
+                    Reservation.Direction.DEBIT, clusterProperties.getNodeId()));
+            reserve(toOwner, new Reservation(transferId, accountToId, amountToTransfer,
+                    Reservation.Direction.CREDIT, clusterProperties.getNodeId()));
+        } catch (RuntimeException e) {
+            decide(transferId, TransferDecision.ABORTED, fromOwner, toOwner);
+            completeAbort(transferId, fromOwner, toOwner);
+            throw e;
+        }
+
+        if (decide(transferId, TransferDecision.COMMITTED, fromOwner, toOwner) != TransferDecision.COMMITTED) {
+            completeAbort(transferId, fromOwner, toOwner);
+            throw new TransferException("Money were not transferred");
+        }
+        pendingCommits.put(transferId, new String[]{fromOwner.getId(), toOwner.getId()});
+        completeCommit(transferId);
+    }
+
+    /**
+     * Decision for a participant which is in doubt. An undecided transfer is aborted by this call.
+     */
+    public TransferDecision getDecision(String transferId) {
+        TransferDecision decision = decide(transferId, TransferDecision.ABORTED, null, null);
+        if (decision == TransferDecision.ABORTED) {
+            presumedAborts.putIfAbsent(transferId, System.currentTimeMillis());
+        }
+        return decision;
+    }
+
+    /**
+     * @return number of the decisions which are kept in memory and in the journal
+     */
+    public int getDecisionCount() {
+        return decisions.size();
+    }
+
+    private TransferDecision decide(String transferId, TransferDecision decision,
+                                    ClusterProperties.Node fromOwner, ClusterProperties.Node toOwner) {
+        TransferDecision previous = decisions.putIfAbsent(transferId, decision);
+        if (previous != null) {
+            return previous;
+        }
+        journal.append(DECIDED + SEPARATOR + transferId + SEPARATOR + decision
+                + (fromOwner == null ? "" : SEPARATOR + fromOwner.getId() + SEPARATOR + toOwner.getId()));
+        return decision;
+    }
+
+    /**
+     * Participants which do not hear the abort resolve it as presumed abort, so the decision can be forgotten
+     */
+    private void completeAbort(String transferId, ClusterProperties.Node fromOwner, ClusterProperties.Node toOwner) {
+        abortQuietly(fromOwner, transferId);
+        abortQuietly(toOwner, transferId);
+        decisions.remove(transferId);
+        journal.append(COMPLETED + SEPARATOR + transferId);
+    }
+
+    private void completeCommit(String transferId) {
+        String[] participants = pendingCommits.get(transferId);
+        if (participants == null) {
+            return;
+        }
+        try {
+            for (String participant : participants) {
+                commit(clusterProperties.getNode(participant), transferId);
+            }
+            pendingCommits.remove(transferId);
+            decisions.remove(transferId);
+            journal.append(COMPLETED + SEPARATOR + transferId);
+        } catch (RuntimeException e) {
+            log.warn("Commit of transfer {} will be retried: {}", transferId, e.getMessage());
+        }
+    }
+
+    /**
+     * Forget the presumed aborts which are older than the retention period, a participant which asks later gets
+     * the abort again
+     */
+    private void forgetPresumedAborts() {
+        long decidedBefore = System.currentTimeMillis() - clusterProperties.getDecisionRetentionMillis();
+        for (Map.Entry<String, Long> presumedAbort : presumedAborts.entrySet()) {
+            String transferId = presumedAbort.getKey();
+            if (presumedAbort.getValue() < decidedBefore && presumedAborts.remove(transferId, presumedAbort.getValue())
+                    && decisions.remove(transferId, TransferDecision.ABORTED)) {
+                journal.append(COMPLETED + SEPARATOR + transferId);
+            }
+        }
+    }
+
+    private void resolve() {
+        try {
+            pendingCommits.keySet().forEach(this::completeCommit);
+            forgetPresumedAborts();
+            for (Reservation reservation : reservationService.getInDoubtReservations()) {
+                ClusterProperties.Node coordinator = clusterProperties.getNode(reservation.getCoordinatorNodeId());
+                TransferDecision decision = clusterProperties.isLocal(coordinator)
+                        ? getDecision(reservation.getTransferId())
+                        : clusterClient.getDecision(coordinator, reservation.getTransferId());
+                log.info("In doubt reservation {} is resolved as {}", reservation, decision);
+                if (decision == TransferDecision.COMMITTED) {
+                    reservationService.commit(reservation.getTransferId());
+                } else {
+                    reservationService.abort(reservation.getTransferId());
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Reservations were not resolved: {}", e.getMessage());
+        }
+    }
+
+    private void reserve(ClusterProperties.Node node, Reservation reservation) {
+        if (clusterProperties.isLocal(node)) {
+            reservationService.reserve(reservation);
+        } else {
+            clusterClient.reserve(node, reservation);
+        }
+    }
+
+    private void commit(ClusterProperties.Node node, String transferId) {
+        if (clusterProperties.isLocal(node)) {
+            reservationService.commit(transferId);
+        } else {
+            clusterClient.commit(node, transferId);
+        }
+    }
+
+    private void abortQuietly(ClusterProperties.Node node, String transferId) {
+        try {
+            if (clusterProperties.isLocal(node)) {
+                reservationService.abort(transferId);
+            } else {
+                clusterClient.abort(node, transferId);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Abort of transfer {} on node {} will be resolved later: {}", transferId, node.getId(),
+                    e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Reservation;
+import com.db.awmd.challenge.repository.FileJournal;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.validator.TransferErrorCode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ValidationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Participant side of the cross node transfers.
+ * A reservation is written to the journal before the money is held back and the commit or abort is written after
+ * the money is moved, so the prepared reservations survive a crash and are resolved with the coordinator later.
+ * Every balance change is applied with an operation id which the account stores together with the balance, so
+ * a step which is repeated after a crash between the journal write and the balance change is not applied twice:
+ * the hold is the operation {@code <transferId>DEBIT} and the settlement {@code <transferId><direction><outcome>}.
+ */
+@Service
+@Slf4j
+public class ReservationService {
+
+    private static final String PREPARED = "P";
+    private static final String COMMITTED = "C";
+    private static final String ABORTED = "A";
+    private static final String SEPARATOR = "\t";
+
+    private final ClusterProperties clusterProperties;
+
+    private final AccountsService accountsService;
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Reservation> preparedReservations = new ConcurrentHashMap<>();
+
+    /**
+     * Reservations which are being prepared, so the retries of the same reservation do not withdraw twice
+     */
+    private final Map<String, CompletableFuture<Void>> reservationsInProgress = new ConcurrentHashMap<>();
+
+    private FileJournal journal;
+
+    @Autowired
+    public ReservationService(ClusterProperties clusterProperties, AccountsService accountsService,
+                              ObjectMapper objectMapper) {
+        this.clusterProperties = clusterProperties;
+        this.accountsService = accountsService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void recover() throws IOException {
+        if (!clusterProperties.isEnabled()) {
+            return;
+        }
+        journal = new FileJournal(clusterProperties.journalPath("reservations"));
+        for (String record : journal.readAll()) {
+            String[] fields = record.split(SEPARATOR, 2);
+            if (PREPARED.equals(fields[0])) {
+                Reservation reservation = objectMapper.readValue(fields[1], Reservation.class);
+                preparedReservations.put(reservation.getTransferId() + reservation.getDirection(), reservation);
+            } else {
+                preparedReservations.remove(fields[1]);
+            }
+        }
+        journal.rewrite(preparedReservations.values().stream().map(this::preparedRecord).collect(Collectors.toList()));
+        log.info("{} prepared reservations were recovered", preparedReservations.size());
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Prepare the reservation, a debit reservation withdraws the money from the account right away
+     *
+     * @param reservation which will be prepared, a repeated reservation gets the outcome of the first one
+     */
+    public void reserve(Reservation reservation) {
+        String key = reservation.getTransferId() + reservation.getDirection();
+        CompletableFuture<Void> reserved = new CompletableFuture<>();
+        CompletableFuture<Void> inProgress = reservationsInProgress.putIfAbsent(key, reserved);
+        if (inProgress != null) {
+            try {
+                inProgress.join();
+            } catch (CompletionException e) {
+                throw (RuntimeException) e.getCause();
+            }
+            return;
+        }
+        try {
+            if (!preparedReservations.containsKey(key)) {
+                prepare(key, reservation);
+            }
+            reserved.complete(null);
+        } catch (RuntimeException e) {
+            reserved.completeExceptionally(e);
+            throw e;
+        } finally {
+            reservationsInProgress.remove(key, reserved);
+        }
+    }
+
+    private void prepare(String key, Reservation reservation) {
+        if (reservation.getDirection() == Reservation.Direction.CREDIT
+                && accountsService.getAccount(reservation.getAccountId()) == null) {
+            throw new ValidationException("Error list is: " + TransferErrorCode.ACCOUNT_TO_ID_NOT_FOUND);
+        }
+        reservation.setPreparedAt(System.currentTimeMillis());
+        journal.append(preparedRecord(reservation));
+        if (reservation.getDirection() == Reservation.Direction.DEBIT) {
+            try {
+                accountsService.withdraw(reservation.getAccountId(), reservation.getAmount(), key);
+            } catch (RuntimeException e) {
+                journal.append(ABORTED + SEPARATOR + key);
+                throw e;
+            }
+        }
+        preparedReservations.put(key, reservation);
+    }
+
+    /**
+     * Commit both sides of the transfer which are prepared on this node, a credit reservation deposits the money
+     */
+    public void commit(String transferId) {
+        settle(transferId, Reservation.Direction.CREDIT, COMMITTED);
+        settle(transferId, Reservation.Direction.DEBIT, COMMITTED);
+    }
+
+    /**
+     * Abort both sides of the transfer which are prepared on this node, a debit reservation returns the money
+     */
+    public void abort(String transferId) {
+        settle(transferId, Reservation.Direction.DEBIT, ABORTED);
+        settle(transferId, Reservation.Direction.CREDIT, ABORTED);
+    }
+
+    /**
+     * @return reservations which are prepared for longer than the in doubt timeout
+     */
+    public Collection<Reservation> getInDoubtReservations() {
+        long preparedBefore = System.currentTimeMillis() - clusterProperties.getInDoubtTimeoutMillis();
+        return preparedReservations.values().stream()
+                .filter(reservation -> reservation.getPreparedAt() < preparedBefore)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Remove the reservation (so a concurrent commit and abort can not both settle it), move the money
+     * and write the outcome. If the money was not moved the reservation stays prepared.
+     */
+    private void settle(String transferId, Reservation.Direction direction, String outcome) {
+        String key = transferId + direction;
+        Reservation reservation = preparedReservations.remove(key);
+        if (reservation == null) {
+            return;
+        }
+        String accountId = reservation.getAccountId();
+        String settlement = key + outcome;
+        try {
+            if (direction == Reservation.Direction.CREDIT) {
+                if (COMMITTED.equals(outcome)) {
+                    accountsService.deposit(accountId, reservation.getAmount(), settlement);
+                }
+            } else if (COMMITTED.equals(outcome)) {
+                // holds the money now if the crash came between the prepare record and the hold
+                accountsService.withdraw(accountId, reservation.getAmount(), key);
+            } else if (accountsService.isApplied(accountId, key)) {
+                accountsService.deposit(accountId, reservation.getAmount(), settlement);
+            }
+        } catch (RuntimeException e) {
+            preparedReservations.put(key, reservation);
+            throw e;
+        }
+        journal.append(outcome + SEPARATOR + key);
+        accountsService.forgetOperations(accountId, key, settlement);
+    }
+
+    private String preparedRecord(Reservation reservation) {
+        try {
+            return PREPARED + SEPARATOR + objectMapper.writeValueAsString(reservation);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
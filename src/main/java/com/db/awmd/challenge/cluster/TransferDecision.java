@@ -0,0 +1,7 @@
+package com.db.awmd.challenge.cluster;
+
+public enum TransferDecision {
+
+    COMMITTED,
+    ABORTED;
+}
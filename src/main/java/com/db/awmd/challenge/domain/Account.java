@@ -2,14 +2,17 @@ package com.db.awmd.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.validator.constraints.NotEmpty;
 
-import javax.validation.constraints.Min;
-import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
 
 @Data
@@ -23,20 +26,42 @@ public class Account {
     @JsonIgnore
     private ReentrantLock lock = new ReentrantLock();
 
+    /**
+     * Ids of the operations which were applied to the balance and must not be applied again, guarded by the lock
+     */
+    @JsonIgnore
+    private Set<String> appliedOperations = new HashSet<>();
+
+    /**
+     * Changed only under the lock, volatile to be read without it
+     */
     @NotNull
     @Min(value = 0, message = "Initial balance must be positive.")
-    private BigDecimal balance;
+    private volatile BigDecimal balance;
+
+    /**
+     * Velocity limits tier, the default tier if not set
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String tier;
 
     public Account(String accountId) {
         this.accountId = accountId;
         this.balance = BigDecimal.ZERO;
     }
 
+    public Account(String accountId, BigDecimal balance) {
+        this.accountId = accountId;
+        this.balance = balance;
+    }
+
     @JsonCreator
     public Account(@JsonProperty("accountId") String accountId,
-                   @JsonProperty("balance") BigDecimal balance) {
+                   @JsonProperty("balance") BigDecimal balance,
+                   @JsonProperty("tier") String tier) {
         this.accountId = accountId;
         this.balance = balance;
+        this.tier = tier;
     }
 
     /**
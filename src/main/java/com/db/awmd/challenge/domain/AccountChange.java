@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Balance of an account after a change on the primary. A follower keeps the change with the highest sequence.
+ */
+@Data
+public class AccountChange {
+
+    private final long sequence;
+
+    private final String accountId;
+
+    private final BigDecimal balance;
+
+    /**
+     * Primary time of the change in milliseconds
+     */
+    private final long changedAt;
+
+    /**
+     * Velocity limits tier of the account, used when the follower creates the account
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String tier;
+
+    public AccountChange(long sequence, String accountId, BigDecimal balance, long changedAt) {
+        this(sequence, accountId, balance, changedAt, null);
+    }
+
+    @JsonCreator
+    public AccountChange(@JsonProperty("sequence") long sequence,
+                         @JsonProperty("accountId") String accountId,
+                         @JsonProperty("balance") BigDecimal balance,
+                         @JsonProperty("changedAt") long changedAt,
+                         @JsonProperty("tier") String tier) {
+        this.sequence = sequence;
+        this.accountId = accountId;
+        this.balance = balance;
+        this.changedAt = changedAt;
+        this.tier = tier;
+    }
+}
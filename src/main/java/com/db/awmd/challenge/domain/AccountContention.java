@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * Lock contention of one account over the reported windows.
+ * Wait time may be overestimated by at most {@code errorNanos} (Space-Saving error).
+ */
+@Data
+public class AccountContention {
+
+    private final String accountId;
+
+    private long waitNanos;
+
+    private long errorNanos;
+
+    private long contendedCount;
+
+    private long timeoutCount;
+
+    public void add(long waitNanos, long errorNanos, long contendedCount, long timeoutCount) {
+        this.waitNanos += waitNanos;
+        this.errorNanos += errorNanos;
+        this.contendedCount += contendedCount;
+        this.timeoutCount += timeoutCount;
+    }
+}
@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Number of accounts with a balance from the lower bound (inclusive) to the upper bound (exclusive).
+ * A missing bound means the bucket is open on that side, the zero balances have a bucket of their own
+ * with both bounds zero.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceHistogramBucket {
+
+    private BigDecimal lowerBound;
+
+    private BigDecimal upperBound;
+
+    private long accounts;
+}
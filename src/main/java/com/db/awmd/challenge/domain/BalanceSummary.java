@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class BalanceSummary {
+
+    /**
+     * Money held by all the accounts
+     */
+    private BigDecimal totalBalance;
+
+    private long accounts;
+
+    private long negativeBalances;
+
+    private long zeroBalances;
+}
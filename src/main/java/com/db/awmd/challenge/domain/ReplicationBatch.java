@@ -0,0 +1,35 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Account changes shipped from the primary to a follower. An empty batch is a heartbeat.
+ */
+@Data
+public class ReplicationBatch {
+
+    /**
+     * Incremented on every promotion, a follower refuses the batches of an older primary
+     */
+    private final long epoch;
+
+    private final List<AccountChange> changes;
+
+    /**
+     * Primary time in milliseconds before which all changes were applied by the follower
+     */
+    private final long caughtUpTo;
+
+    @JsonCreator
+    public ReplicationBatch(@JsonProperty("epoch") long epoch,
+                            @JsonProperty("changes") List<AccountChange> changes,
+                            @JsonProperty("caughtUpTo") long caughtUpTo) {
+        this.epoch = epoch;
+        this.changes = changes;
+        this.caughtUpTo = caughtUpTo;
+    }
+}
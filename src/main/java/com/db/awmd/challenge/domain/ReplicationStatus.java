@@ -0,0 +1,44 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.replication.ReplicationRole;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ReplicationStatus {
+
+    private ReplicationRole role;
+
+    /**
+     * Highest sequence of a change made (primary) or applied (follower) on this node
+     */
+    private long lastSequence;
+
+    /**
+     * How far the data of this follower is behind the primary, -1 if it never heard from the primary
+     */
+    private long lagMillis;
+
+    private List<Follower> followers = new ArrayList<>();
+
+    @Data
+    public static class Follower {
+
+        private String url;
+
+        private long lagMillis;
+
+        /**
+         * Changes waiting to be sent
+         */
+        private int pendingChanges;
+
+        private int inFlightBatches;
+
+        private long resyncs;
+
+        private String lastError;
+    }
+}
@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * One side of a transfer between accounts which are owned by different cluster nodes.
+ * A debit reservation holds the money back from the account until the transfer is committed or aborted,
+ * a credit reservation deposits the money on commit.
+ */
+@Data
+public class Reservation {
+
+    public enum Direction {
+        DEBIT,
+        CREDIT
+    }
+
+    private final String transferId;
+
+    private final String accountId;
+
+    private final BigDecimal amount;
+
+    private final Direction direction;
+
+    /**
+     * Node which decides whether the transfer is committed
+     */
+    private final String coordinatorNodeId;
+
+    private long preparedAt;
+
+    @JsonCreator
+    public Reservation(@JsonProperty("transferId") String transferId,
+                       @JsonProperty("accountId") String accountId,
+                       @JsonProperty("amount") BigDecimal amount,
+                       @JsonProperty("direction") Direction direction,
+                       @JsonProperty("coordinatorNodeId") String coordinatorNodeId) {
+        this.transferId = transferId;
+        this.accountId = accountId;
+        this.amount = amount;
+        this.direction = direction;
+        this.coordinatorNodeId = coordinatorNodeId;
+    }
+}
@@ -0,0 +1,69 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Future dated transfer. A transfer with positive interval is recurring (standing order).
+ */
+@Data
+public class ScheduledTransfer {
+
+    private String id;
+
+    @NotNull
+    @NotEmpty
+    private final String accountFromId;
+
+    @NotNull
+    @NotEmpty
+    private final String accountToId;
+
+    @NotNull
+    @Min(value = 0, message = "The amount to transfer should be a positive number.")
+    private final BigDecimal amountToTransfer;
+
+    /**
+     * Epoch millis when the transfer is due
+     */
+    @NotNull
+    private Long dueAt;
+
+    /**
+     * Millis between the occurrences of a recurring transfer, 0 for a single transfer
+     */
+    @Min(value = 0, message = "The interval should not be negative.")
+    private long intervalMillis;
+
+    @JsonCreator
+    public ScheduledTransfer(@JsonProperty("id") String id,
+                             @JsonProperty("accountFromId") String accountFromId,
+                             @JsonProperty("accountToId") String accountToId,
+                             @JsonProperty("amountToTransfer") BigDecimal amountToTransfer,
+                             @JsonProperty("dueAt") Long dueAt,
+                             @JsonProperty("intervalMillis") long intervalMillis) {
+        this.id = id;
+        this.accountFromId = accountFromId;
+        this.accountToId = accountToId;
+        this.amountToTransfer = amountToTransfer;
+        this.dueAt = dueAt;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @JsonIgnore
+    public Transfer toTransfer() {
+        return new Transfer(accountFromId, accountToId, amountToTransfer);
+    }
+
+    @JsonIgnore
+    public boolean isRecurring() {
+        return intervalMillis > 0;
+    }
+}
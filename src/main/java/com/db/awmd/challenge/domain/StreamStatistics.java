@@ -0,0 +1,18 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+@Data
+public class StreamStatistics {
+
+    private int subscribers;
+
+    private int subscribedAccounts;
+
+    private long sentBalances;
+
+    /**
+     * Balances which were replaced by a newer one before they were sent
+     */
+    private long conflatedBalances;
+}
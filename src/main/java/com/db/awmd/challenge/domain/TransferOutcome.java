@@ -0,0 +1,32 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * Result of a single transfer which was processed as a part of a netted batch.
+ */
+@Data
+public class TransferOutcome {
+
+    public enum Status {
+        APPLIED,
+        REJECTED
+    }
+
+    private final Transfer transfer;
+
+    private final Status status;
+
+    /**
+     * Comma separated {@link com.db.awmd.challenge.validator.TransferErrorCode} names, null for applied transfers
+     */
+    private final String errorCode;
+
+    public static TransferOutcome applied(Transfer transfer) {
+        return new TransferOutcome(transfer, Status.APPLIED, null);
+    }
+
+    public static TransferOutcome rejected(Transfer transfer, String errorCode) {
+        return new TransferOutcome(transfer, Status.REJECTED, errorCode);
+    }
+}
@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Money can not be moved on a follower, it only applies the changes of the primary
+ */
+public class ReadOnlyReplicaException extends TransferException {
+
+    public ReadOnlyReplicaException(String message) {
+        super(message);
+    }
+}
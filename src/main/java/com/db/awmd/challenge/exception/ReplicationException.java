@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class ReplicationException extends RuntimeException {
+
+    public ReplicationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class SubscriptionLimitException extends RuntimeException {
+
+    public SubscriptionLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,121 @@
+package com.db.awmd.challenge.profiler;
+
+import com.db.awmd.challenge.domain.AccountContention;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks the heaviest contended accounts on the transfer lock path over sliding windows.
+ * Every window has its own fixed size {@link SpaceSavingSketch}, the windows form a ring which is reused
+ * when time moves on, so the memory does not depend on the number of accounts.
+ * Only contended lock acquisitions are recorded, uncontended ones cost nothing.
+ */
+@Component
+public class LockContentionProfiler {
+
+    private final boolean enabled;
+
+    private final long windowMillis;
+
+    private final int capacity;
+
+    private final SpaceSavingSketch[] sketches;
+
+    private final long[] sketchWindows;
+
+    private final ReentrantLock[] sketchLocks;
+
+    @Autowired
+    public LockContentionProfiler(@Value("${profiler.contention.enabled:true}") boolean enabled,
+                                  @Value("${profiler.contention.capacity:128}") int capacity,
+                                  @Value("${profiler.contention.window-millis:10000}") long windowMillis,
+                                  @Value("${profiler.contention.windows:6}") int windows) {
+        this.enabled = enabled;
+        this.windowMillis = windowMillis;
+        this.capacity = capacity;
+        this.sketches = new SpaceSavingSketch[windows];
+        this.sketchWindows = new long[windows];
+        this.sketchLocks = new ReentrantLock[windows];
+        for (int i = 0; i < windows; i++) {
+            sketches[i] = new SpaceSavingSketch(capacity);
+            sketchLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Record a contended lock acquisition
+     *
+     * @param accountId whose lock was contended
+     * @param waitNanos how long the transfer waited for the lock
+     * @param timedOut  true if the lock was not acquired
+     */
+    public void record(String accountId, long waitNanos, boolean timedOut) {
+        if (!enabled) {
+            return;
+        }
+        long window = System.currentTimeMillis() / windowMillis;
+        int index = (int) (window % sketches.length);
+        SpaceSavingSketch sketch = sketches[index];
+        sketchLocks[index].lock();
+        try {
+            if (sketchWindows[index] != window) {
+                sketch.clear();
+                sketchWindows[index] = window;
+            }
+            sketch.offer(accountId, waitNanos, timedOut);
+        } finally {
+            sketchLocks[index].unlock();
+        }
+    }
+
+    /**
+     * Heaviest contended accounts of the last windows
+     *
+     * @param top     how many accounts to report
+     * @param windows how many of the last windows (including the current one) to merge
+     * @return accounts ordered by the wait time, the heaviest first
+     */
+    public List<AccountContention> getTopContended(int top, int windows) {
+        long currentWindow = System.currentTimeMillis() / windowMillis;
+        Map<String, AccountContention> merged = new HashMap<>();
+        for (int i = 0; i < Math.min(windows, sketches.length); i++) {
+            long window = currentWindow - i;
+            int index = (int) (window % sketches.length);
+            sketchLocks[index].lock();
+            try {
+                if (sketchWindows[index] == window) {
+                    sketches[index].mergeInto(merged);
+                }
+            } finally {
+                sketchLocks[index].unlock();
+            }
+        }
+        return merged.values().stream()
+                .sorted(Comparator.comparingLong(AccountContention::getWaitNanos).reversed())
+                .limit(top)
+                .collect(Collectors.toList());
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return most accounts tracked per window
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getWindows() {
+        return sketches.length;
+    }
+}
@@ -0,0 +1,122 @@
+package com.db.awmd.challenge.profiler;
+
+import com.db.awmd.challenge.domain.AccountContention;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Weighted Space-Saving sketch (Metwally, Agrawal, El Abbadi) of the heaviest contended accounts.
+ * It keeps at most {@code capacity} counters, when a new account arrives into a full sketch
+ * the lightest counter is taken over and its weight is kept as the error of the new account.
+ * Any account which is heavier than {@code totalWeight / capacity} is guaranteed to be in the sketch.
+ * The counters are also kept in a binary min-heap by weight (each counter knows its heap index), so the lightest
+ * counter is found in O(1) and an offer costs O(log capacity). The weights are arbitrary wait times, so the
+ * count buckets of the stream-summary structure would hold one counter each.
+ * <p>
+ * The sketch is not thread safe, the owner is responsible for the locking.
+ */
+class SpaceSavingSketch {
+
+    private final int capacity;
+
+    private final Map<String, Counter> counters;
+
+    /**
+     * Min-heap of the counters by the wait time, the lightest counter is at index 0
+     */
+    private final Counter[] heap;
+
+    private int size;
+
+    SpaceSavingSketch(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    void offer(String accountId, long waitNanos, boolean timedOut) {
+        Counter counter = counters.get(accountId);
+        if (counter == null) {
+            counter = new Counter(accountId);
+            if (size >= capacity) {
+                Counter lightest = heap[0];
+                counters.remove(lightest.accountId);
+                counter.waitNanos = lightest.waitNanos;
+                counter.errorNanos = lightest.waitNanos;
+                counter.heapIndex = 0;
+                heap[0] = counter;
+            } else {
+                counter.heapIndex = size;
+                heap[size++] = counter;
+            }
+            counters.put(accountId, counter);
+        }
+        counter.waitNanos += waitNanos;
+        counter.contendedCount++;
+        if (timedOut) {
+            counter.timeoutCount++;
+        }
+        siftDown(counter);
+    }
+
+    /**
+     * Add the counters of this sketch into the merged statistics
+     */
+    void mergeInto(Map<String, AccountContention> merged) {
+        for (Counter counter : counters.values()) {
+            AccountContention contention = merged.computeIfAbsent(counter.accountId, AccountContention::new);
+            contention.add(counter.waitNanos, counter.errorNanos, counter.contendedCount, counter.timeoutCount);
+        }
+    }
+
+    void clear() {
+        counters.clear();
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Move the counter whose weight grew down the heap, weights never decrease so it never moves up
+     */
+    private void siftDown(Counter counter) {
+        int index = counter.heapIndex;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].waitNanos < heap[child].waitNanos) {
+                child++;
+            }
+            if (heap[child].waitNanos >= counter.waitNanos) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+
+    private static final class Counter {
+
+        private final String accountId;
+
+        private long waitNanos;
+
+        private long errorNanos;
+
+        private long contendedCount;
+
+        private long timeoutCount;
+
+        private int heapIndex;
+
+        private Counter(String accountId) {
+            this.accountId = accountId;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountChange;
+import com.db.awmd.challenge.domain.ReplicationBatch;
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ships the changes of the primary to one follower.
+ * The changing threads only put the change to a bounded lock-free queue, so the changes of unrelated accounts
+ * do not wait for each other, and wake the shipper if it was idle. A shipper thread cuts the queue into batches and
+ * sends up to {@code maxInFlightBatches} of them at once, a failed batch is sent again until the follower takes it.
+ * When the queue overflows or the follower was restarted, the follower is synchronized from a snapshot of all
+ * accounts. That is safe because a follower keeps only the change with the highest sequence of every account.
+ */
+@Slf4j
+class FollowerChannel {
+
+    private final String url;
+
+    private final long epoch;
+
+    private final ReplicationProperties properties;
+
+    private final AccountsRepository accountsRepository;
+
+    private final AtomicLong sequence;
+
+    private final RestTemplate restTemplate;
+
+    private final Queue<AccountChange> pendingChanges = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Size of the pending changes, the size of the queue itself is not constant time
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final Semaphore inFlightPermits;
+
+    private final ExecutorService senders;
+
+    /**
+     * Batches which are sent but not taken by the follower yet, batch id to the time of its oldest change
+     */
+    private final Map<Long, Long> inFlightBatches = new ConcurrentHashMap<>();
+
+    private final AtomicLong resyncs = new AtomicLong();
+
+    private final Thread shipper;
+
+    private long nextBatchId;
+
+    private volatile boolean resyncRequired = true;
+
+    /**
+     * While a snapshot is being cut, the primary time before which the follower had all changes
+     */
+    private volatile long resyncCaughtUpTo = Long.MAX_VALUE;
+
+    private volatile String followerInstanceId;
+
+    private volatile String lastError;
+
+    private volatile boolean running = true;
+
+    FollowerChannel(String url, long epoch, ReplicationProperties properties, AccountsRepository accountsRepository,
+                    AtomicLong sequence) {
+        this.url = url;
+        this.epoch = epoch;
+        this.properties = properties;
+        this.accountsRepository = accountsRepository;
+        this.sequence = sequence;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(properties.getRequestTimeoutMillis());
+        requestFactory.setReadTimeout(properties.getRequestTimeoutMillis());
+        this.restTemplate = new RestTemplate(requestFactory);
+        this.inFlightPermits = new Semaphore(properties.getMaxInFlightBatches());
+        this.senders = Executors.newFixedThreadPool(properties.getMaxInFlightBatches());
+        this.shipper = new Thread(this::ship, "replication-" + url);
+        this.shipper.setDaemon(true);
+    }
+
+    void start() {
+        shipper.start();
+    }
+
+    void stop() {
+        running = false;
+        shipper.interrupt();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Called by the changing thread, never blocks
+     */
+    void offer(AccountChange change) {
+        int pending = pendingCount.getAndIncrement();
+        if (pending >= properties.getMaxPendingChanges()) {
+            pendingCount.decrementAndGet();
+            resyncRequired = true;
+            return;
+        }
+        pendingChanges.offer(change);
+        if (pending == 0) {
+            LockSupport.unpark(shipper);
+        }
+    }
+
+    ReplicationStatus.Follower getStatus() {
+        ReplicationStatus.Follower status = new ReplicationStatus.Follower();
+        status.setUrl(url);
+        status.setLagMillis(System.currentTimeMillis() - caughtUpTo());
+        status.setPendingChanges(pendingCount.get());
+        status.setInFlightBatches(inFlightBatches.size());
+        status.setResyncs(resyncs.get());
+        status.setLastError(lastError);
+        return status;
+    }
+
+    private void ship() {
+        while (running) {
+            try {
+                if (resyncRequired) {
+                    resync();
+                }
+                send(awaitChanges());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the next batch of the pending changes, empty (a heartbeat) if none came within the heartbeat interval
+     */
+    private List<AccountChange> awaitChanges() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getHeartbeatMillis());
+        List<AccountChange> changes = pollChanges(properties.getBatchSize());
+        for (long remaining = deadline - System.nanoTime(); changes.isEmpty() && remaining > 0;
+             remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            changes = pollChanges(properties.getBatchSize());
+        }
+        return changes;
+    }
+
+    private List<AccountChange> pollChanges(int maxChanges) {
+        List<AccountChange> changes = new ArrayList<>();
+        AccountChange change;
+        while (changes.size() < maxChanges && (change = pendingChanges.poll()) != null) {
+            changes.add(change);
+        }
+        pendingCount.addAndGet(-changes.size());
+        return changes;
+    }
+
+    /**
+     * The changes queued before are covered by the snapshot: every change takes its sequence after the new
+     * balance is set, so a change with a sequence up to the one read here is visible in the snapshot.
+     */
+    private void resync() throws InterruptedException {
+        resyncRequired = false;
+        long snapshotAt = caughtUpTo();
+        resyncCaughtUpTo = snapshotAt;
+        pollChanges(Integer.MAX_VALUE);
+        resyncs.incrementAndGet();
+        long snapshotSequence = sequence.get();
+        List<AccountChange> changes = new ArrayList<>();
+        int accounts = 0;
+        try {
+            for (Account account : accountsRepository.getAccounts()) {
+                changes.add(new AccountChange(snapshotSequence, account.getAccountId(), account.getBalance(),
+                        snapshotAt, account.getTier()));
+                accounts++;
+                if (changes.size() == properties.getBatchSize()) {
+                    send(changes);
+                    changes = new ArrayList<>();
+                }
+            }
+            if (!changes.isEmpty()) {
+                send(changes);
+            }
+        } finally {
+            resyncCaughtUpTo = Long.MAX_VALUE;
+        }
+        log.info("Follower {} is synchronized from a snapshot of {} accounts", url, accounts);
+    }
+
+    private void send(List<AccountChange> changes) throws InterruptedException {
+        inFlightPermits.acquire();
+        long batchId = nextBatchId++;
+        inFlightBatches.put(batchId, changes.isEmpty() ? System.currentTimeMillis() : changes.get(0).getChangedAt());
+        ReplicationBatch batch = new ReplicationBatch(epoch, changes, caughtUpTo());
+        senders.execute(() -> {
+            try {
+                sendUntilTaken(batch);
+            } finally {
+                inFlightBatches.remove(batchId);
+                inFlightPermits.release();
+            }
+        });
+    }
+
+    private void sendUntilTaken(ReplicationBatch batch) {
+        while (running) {
+            try {
+                String instanceId = restTemplate.exchange(url + "/v1/replication/batches", HttpMethod.PUT,
+                        new HttpEntity<>(batch), String.class).getBody();
+                if (followerInstanceId != null && !followerInstanceId.equals(instanceId)) {
+                    log.info("Follower {} was restarted", url);
+                    resyncRequired = true;
+                }
+                followerInstanceId = instanceId;
+                lastError = null;
+                return;
+            } catch (RestClientException e) {
+                if (!Objects.equals(lastError, e.getMessage())) {
+                    log.warn("Batch was not taken by follower {}, it will be sent again: {}", url, e.getMessage());
+                }
+                lastError = e.getMessage();
+                try {
+                    Thread.sleep(properties.getRetryDelayMillis());
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return primary time before which all changes were taken by the follower
+     */
+    private long caughtUpTo() {
+        long caughtUpTo = Math.min(System.currentTimeMillis(), resyncCaughtUpTo);
+        AccountChange oldestPending = pendingChanges.peek();
+        if (oldestPending != null) {
+            caughtUpTo = Math.min(caughtUpTo, oldestPending.getChangedAt());
+        }
+        for (long oldestInFlight : inFlightBatches.values()) {
+            caughtUpTo = Math.min(caughtUpTo, oldestInFlight);
+        }
+        return caughtUpTo;
+    }
+}
@@ -0,0 +1,47 @@
+package com.db.awmd.challenge.replication;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Leader-follower replication settings
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "replication")
+public class ReplicationProperties {
+
+    private ReplicationRole role = ReplicationRole.STANDALONE;
+
+    /**
+     * Base urls of the followers the primary (or a promoted follower) ships the changes to
+     */
+    private List<String> followers = new ArrayList<>();
+
+    private int batchSize = 500;
+
+    /**
+     * Changes kept for a follower, a follower which falls further behind is synchronized from a snapshot
+     */
+    private int maxPendingChanges = 100_000;
+
+    /**
+     * Batches sent to a follower without waiting for the previous ones
+     */
+    private int maxInFlightBatches = 4;
+
+    private long heartbeatMillis = 200;
+
+    /**
+     * A follower which is further behind refuses to serve the reads, 0 to serve them anyway
+     */
+    private long maxLagMillis = 5000;
+
+    private long retryDelayMillis = 500;
+
+    private int requestTimeoutMillis = 2000;
+}
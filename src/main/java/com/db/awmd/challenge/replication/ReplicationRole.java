@@ -0,0 +1,10 @@
+package com.db.awmd.challenge.replication;
+
+public enum ReplicationRole {
+    /**
+     * Replication is off
+     */
+    STANDALONE,
+    PRIMARY,
+    FOLLOWER
+}
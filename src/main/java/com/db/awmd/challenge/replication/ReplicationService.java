@@ -0,0 +1,205 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountChange;
+import com.db.awmd.challenge.domain.ReplicationBatch;
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.exception.ReadOnlyReplicaException;
+import com.db.awmd.challenge.exception.ReplicationException;
+import com.db.awmd.challenge.repository.AccountChangeListener;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Leader-follower replication of the account balances.
+ * <p>
+ * The primary gives every account change a sequence and ships it to the followers (see {@link FollowerChannel}).
+ * A follower applies the change to its own repository unless it already has a newer change of the account, so
+ * the batches may arrive in any order and more than once. The follower serves the reads and refuses the writes
+ * until it is promoted. The upper bits of the sequence are the epoch of the primary, a promotion starts a new
+ * epoch, so the changes of the new primary win and the batches of the old one are refused.
+ */
+@Service
+@Slf4j
+public class ReplicationService implements AccountChangeListener {
+
+    private static final int EPOCH_SHIFT = 40;
+
+    private final ReplicationProperties properties;
+
+    private final AccountsRepository accountsRepository;
+
+    /**
+     * Identifies this run of the node, so the primary notices a restarted (empty) follower
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Follower side, account id to the sequence of the applied change
+     */
+    private final Map<String, Long> appliedSequences = new ConcurrentHashMap<>();
+
+    private final AtomicLong highestEpoch = new AtomicLong();
+
+    private final AtomicLong caughtUpTo = new AtomicLong(-1);
+
+    private volatile ReplicationRole role;
+
+    private volatile List<FollowerChannel> channels = Collections.emptyList();
+
+    /**
+     * Serializes the promotions, so only one of them starts a new epoch
+     */
+    private final ReentrantLock promoteLock = new ReentrantLock();
+
+    @Autowired
+    public ReplicationService(ReplicationProperties properties, AccountsRepository accountsRepository) {
+        this.properties = properties;
+        this.accountsRepository = accountsRepository;
+    }
+
+    @PostConstruct
+    public void start() {
+        role = properties.getRole();
+        if (role == ReplicationRole.STANDALONE) {
+            return;
+        }
+        accountsRepository.addChangeListener(this);
+        if (role == ReplicationRole.PRIMARY) {
+            startShipping();
+        }
+        log.info("Replication started as {}", role);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        channels.forEach(FollowerChannel::stop);
+    }
+
+    @Override
+    public void accountChanged(String accountId, BigDecimal balance) {
+        if (role != ReplicationRole.PRIMARY) {
+            return;
+        }
+        Account account = accountsRepository.getAccount(accountId);
+        AccountChange change = new AccountChange(sequence.incrementAndGet(), accountId, balance,
+                System.currentTimeMillis(), account == null ? null : account.getTier());
+        for (FollowerChannel channel : channels) {
+            channel.offer(change);
+        }
+    }
+
+    /**
+     * Apply a batch of the primary
+     *
+     * @return instance id of this follower
+     */
+    public String apply(ReplicationBatch batch) {
+        if (role != ReplicationRole.FOLLOWER) {
+            throw new ReplicationException("Node is not a follower, it is " + role);
+        }
+        long epoch = highestEpoch.accumulateAndGet(batch.getEpoch(), Math::max);
+        if (batch.getEpoch() < epoch) {
+            throw new ReplicationException("Batch of epoch " + batch.getEpoch() + " is older than epoch " + epoch);
+        }
+        for (AccountChange change : batch.getChanges()) {
+            appliedSequences.compute(change.getAccountId(), (accountId, appliedSequence) -> {
+                if (appliedSequence != null && appliedSequence >= change.getSequence()) {
+                    return appliedSequence;
+                }
+                if (accountsRepository.getAccount(accountId) == null) {
+                    accountsRepository.createAccount(new Account(accountId, change.getBalance(), change.getTier()));
+                } else {
+                    accountsRepository.updateAccount(accountId, change.getBalance());
+                }
+                return change.getSequence();
+            });
+            sequence.accumulateAndGet(change.getSequence(), Math::max);
+        }
+        caughtUpTo.accumulateAndGet(batch.getCaughtUpTo(), Math::max);
+        return instanceId;
+    }
+
+    /**
+     * Make this follower the primary, e.g. when the primary died
+     */
+    public void promote() {
+        promoteLock.lock();
+        try {
+            if (role != ReplicationRole.FOLLOWER) {
+                throw new ReplicationException("Node is not a follower, it is " + role);
+            }
+            long epoch = Math.max(highestEpoch.get(), sequence.get() >>> EPOCH_SHIFT) + 1;
+            sequence.set(epoch << EPOCH_SHIFT);
+            role = ReplicationRole.PRIMARY;
+            startShipping();
+            log.info("Node was promoted to primary of epoch {}", epoch);
+        } finally {
+            promoteLock.unlock();
+        }
+    }
+
+    /**
+     * @throws ReadOnlyReplicaException on a follower
+     */
+    public void checkWritable() {
+        if (role == ReplicationRole.FOLLOWER) {
+            throw new ReadOnlyReplicaException("Node is a read only follower");
+        }
+    }
+
+    /**
+     * @return true on a follower which is behind the primary by more than the max lag
+     */
+    public boolean isStale() {
+        if (role != ReplicationRole.FOLLOWER || properties.getMaxLagMillis() <= 0) {
+            return false;
+        }
+        long lagMillis = getLagMillis();
+        return lagMillis < 0 || lagMillis > properties.getMaxLagMillis();
+    }
+
+    /**
+     * @return how far the data of this follower is behind the primary, -1 if it never heard from the primary
+     */
+    public long getLagMillis() {
+        if (role != ReplicationRole.FOLLOWER) {
+            return 0;
+        }
+        long primaryTime = caughtUpTo.get();
+        return primaryTime < 0 ? -1 : Math.max(0, System.currentTimeMillis() - primaryTime);
+    }
+
+    public ReplicationStatus getStatus() {
+        ReplicationStatus status = new ReplicationStatus();
+        status.setRole(role);
+        status.setLastSequence(sequence.get());
+        status.setLagMillis(getLagMillis());
+        status.setFollowers(channels.stream().map(FollowerChannel::getStatus).collect(Collectors.toList()));
+        return status;
+    }
+
+    private void startShipping() {
+        long epoch = sequence.get() >>> EPOCH_SHIFT;
+        channels = properties.getFollowers().stream()
+                .map(url -> new FollowerChannel(url, epoch, properties, accountsRepository, sequence))
+                .collect(Collectors.toList());
+        channels.forEach(FollowerChannel::start);
+    }
+}
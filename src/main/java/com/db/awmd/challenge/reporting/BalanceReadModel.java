@@ -0,0 +1,219 @@
+package com.db.awmd.challenge.reporting;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceHistogramBucket;
+import com.db.awmd.challenge.domain.BalanceSummary;
+import com.db.awmd.challenge.repository.AccountChangeListener;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates of the account balances for the reports, kept up to date by every account change.
+ * <p>
+ * A change is applied as the difference to the last balance of the account which was seen, within
+ * {@link ConcurrentHashMap#compute} of the account, so the changes of one account are applied one after another.
+ * The total is summed in stripes chosen by the account id, so the changes of different accounts rarely update the
+ * same sum. The accounts are counted per balance bucket of a power of ten and indexed by balance for the top N.
+ * A report costs the number of stripes and buckets or log(accounts) + N, however many accounts there are.
+ * Reads are not a snapshot, a report may see some changes of a transfer which is being applied.
+ */
+@Service
+public class BalanceReadModel implements AccountChangeListener {
+
+    private static final Comparator<BalanceEntry> BY_BALANCE_DESCENDING = Comparator
+            .comparing(BalanceEntry::getBalance, Comparator.reverseOrder())
+            .thenComparing(BalanceEntry::getAccountId);
+
+    /**
+     * Positive balances are bucketed by the number of the integer digits, up to 10^HIGHEST_POWER and above
+     */
+    private static final int HIGHEST_POWER = 15;
+
+    private static final int NEGATIVE_BUCKET = 0;
+    private static final int ZERO_BUCKET = 1;
+    private static final int FIRST_POSITIVE_BUCKET = 2;
+
+    private final AccountsRepository accountsRepository;
+
+    private final Map<String, BigDecimal> balances = new ConcurrentHashMap<>();
+
+    private final AtomicReference<BigDecimal>[] totalStripes;
+
+    private final LongAdder accounts = new LongAdder();
+
+    private final LongAdder negativeBalances = new LongAdder();
+
+    private final LongAdder zeroBalances = new LongAdder();
+
+    private final AtomicLongArray histogram = new AtomicLongArray(FIRST_POSITIVE_BUCKET + HIGHEST_POWER + 2);
+
+    private final NavigableSet<BalanceEntry> byBalance = new ConcurrentSkipListSet<>(BY_BALANCE_DESCENDING);
+
+    @Autowired
+    @SuppressWarnings("unchecked")
+    public BalanceReadModel(AccountsRepository accountsRepository,
+                            @Value("${reporting.total-stripes:32}") int totalStripes) {
+        this.accountsRepository = accountsRepository;
+        this.totalStripes = new AtomicReference[totalStripes];
+        for (int i = 0; i < totalStripes; i++) {
+            this.totalStripes[i] = new AtomicReference<>(BigDecimal.ZERO);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        accountsRepository.addChangeListener(this);
+        // Accounts which were created before, a change which came meanwhile is newer and wins
+        for (Account account : accountsRepository.getAccounts()) {
+            balances.computeIfAbsent(account.getAccountId(), accountId -> {
+                apply(accountId, null, account.getBalance());
+                return account.getBalance();
+            });
+        }
+    }
+
+    @Override
+    public void accountChanged(String accountId, BigDecimal balance) {
+        balances.compute(accountId, (id, previousBalance) -> {
+            apply(id, previousBalance, balance);
+            return balance;
+        });
+    }
+
+    /**
+     * A creation never replaces a balance which is already known, e.g. from the snapshot taken in {@link #start()}
+     */
+    @Override
+    public void accountCreated(Account account) {
+        balances.computeIfAbsent(account.getAccountId(), accountId -> {
+            apply(accountId, null, account.getBalance());
+            return account.getBalance();
+        });
+    }
+
+    @Override
+    public void accountsCleared() {
+        for (String accountId : balances.keySet()) {
+            balances.computeIfPresent(accountId, (id, previousBalance) -> {
+                apply(id, previousBalance, null);
+                return null;
+            });
+        }
+    }
+
+    public BalanceSummary getSummary() {
+        BalanceSummary summary = new BalanceSummary();
+        BigDecimal totalBalance = BigDecimal.ZERO;
+        for (AtomicReference<BigDecimal> stripe : totalStripes) {
+            totalBalance = totalBalance.add(stripe.get());
+        }
+        summary.setTotalBalance(totalBalance);
+        summary.setAccounts(accounts.sum());
+        summary.setNegativeBalances(negativeBalances.sum());
+        summary.setZeroBalances(zeroBalances.sum());
+        return summary;
+    }
+
+    public List<BalanceHistogramBucket> getHistogram() {
+        List<BalanceHistogramBucket> buckets = new ArrayList<>(histogram.length());
+        buckets.add(new BalanceHistogramBucket(null, BigDecimal.ZERO, histogram.get(NEGATIVE_BUCKET)));
+        buckets.add(new BalanceHistogramBucket(BigDecimal.ZERO, BigDecimal.ZERO, histogram.get(ZERO_BUCKET)));
+        for (int power = 0; power <= HIGHEST_POWER + 1; power++) {
+            buckets.add(new BalanceHistogramBucket(
+                    power == 0 ? BigDecimal.ZERO : BigDecimal.ONE.scaleByPowerOfTen(power - 1),
+                    power > HIGHEST_POWER ? null : BigDecimal.ONE.scaleByPowerOfTen(power),
+                    histogram.get(FIRST_POSITIVE_BUCKET + power)));
+        }
+        return buckets;
+    }
+
+    /**
+     * @return accounts with the highest balances, the highest first
+     */
+    public List<Account> getTopAccounts(int limit) {
+        List<Account> top = new ArrayList<>(Math.min(limit, 100));
+        Iterator<BalanceEntry> entries = byBalance.iterator();
+        while (top.size() < limit && entries.hasNext()) {
+            BalanceEntry entry = entries.next();
+            top.add(new Account(entry.getAccountId(), entry.getBalance()));
+        }
+        return top;
+    }
+
+    /**
+     * Replace the previous balance of the account by the new one in all the aggregates, null for none
+     */
+    private void apply(String accountId, BigDecimal previousBalance, BigDecimal balance) {
+        BigDecimal difference = (balance == null ? BigDecimal.ZERO : balance)
+                .subtract(previousBalance == null ? BigDecimal.ZERO : previousBalance);
+        if (difference.signum() != 0) {
+            totalStripes[(accountId.hashCode() & Integer.MAX_VALUE) % totalStripes.length]
+                    .accumulateAndGet(difference, BigDecimal::add);
+        }
+        if (previousBalance != null) {
+            count(previousBalance, -1);
+            byBalance.remove(new BalanceEntry(accountId, previousBalance));
+        }
+        if (balance != null) {
+            count(balance, 1);
+            byBalance.add(new BalanceEntry(accountId, balance));
+        }
+    }
+
+    private void count(BigDecimal balance, int delta) {
+        accounts.add(delta);
+        if (balance.signum() < 0) {
+            negativeBalances.add(delta);
+        } else if (balance.signum() == 0) {
+            zeroBalances.add(delta);
+        }
+        histogram.addAndGet(bucketOf(balance), delta);
+    }
+
+    private static int bucketOf(BigDecimal balance) {
+        if (balance.signum() < 0) {
+            return NEGATIVE_BUCKET;
+        }
+        if (balance.signum() == 0) {
+            return ZERO_BUCKET;
+        }
+        int integerDigits = Math.max(0, balance.precision() - balance.scale());
+        return FIRST_POSITIVE_BUCKET + Math.min(integerDigits, HIGHEST_POWER + 1);
+    }
+
+    private static final class BalanceEntry {
+
+        private final String accountId;
+
+        private final BigDecimal balance;
+
+        private BalanceEntry(String accountId, BigDecimal balance) {
+            this.accountId = accountId;
+            this.balance = balance;
+        }
+
+        private String getAccountId() {
+            return accountId;
+        }
+
+        private BigDecimal getBalance() {
+            return balance;
+        }
+    }
+}
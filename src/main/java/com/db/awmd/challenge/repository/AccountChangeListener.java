@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+
+import java.math.BigDecimal;
+
+/**
+ * Notified by the {@link AccountsRepository} after an account was created or its balance was updated.
+ * It is called on the thread which changed the account under the account lock, so it must be fast.
+ */
+public interface AccountChangeListener {
+
+    /**
+     * @param accountId which was updated (or created, unless {@link #accountCreated(Account)} is overridden)
+     * @param balance   the new balance
+     */
+    void accountChanged(String accountId, BigDecimal balance);
+
+    /**
+     * @param account which was created, with its initial balance
+     */
+    default void accountCreated(Account account) {
+        accountChanged(account.getAccountId(), account.getBalance());
+    }
+
+    /**
+     * All the accounts were removed
+     */
+    default void accountsCleared() {
+    }
+}
@@ -4,6 +4,7 @@ import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 
 public interface AccountsRepository {
 
@@ -11,7 +12,11 @@ public interface AccountsRepository {
 
     Account getAccount(String accountId);
 
+    Collection<Account> getAccounts();
+
     void clearAccounts();
 
     void updateAccount(String accountId, BigDecimal amount);
+
+    void addChangeListener(AccountChangeListener listener);
 }
@@ -5,20 +5,34 @@ import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Repository
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
     private final Map<String, Account> accounts = new ConcurrentHashMap<>();
 
+    private final List<AccountChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
     @Override
     public void createAccount(Account account) throws DuplicateAccountIdException {
-        Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
-        if (previousAccount != null) {
-            throw new DuplicateAccountIdException(
-                    "Account id " + account.getAccountId() + " already exists!");
+        // The account is locked before it is visible, so no update of its balance is notified before its creation
+        account.getLock().lock();
+        try {
+            Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
+            if (previousAccount != null) {
+                throw new DuplicateAccountIdException(
+                        "Account id " + account.getAccountId() + " already exists!");
+            }
+            for (AccountChangeListener listener : changeListeners) {
+                listener.accountCreated(account);
+            }
+        } finally {
+            account.getLock().unlock();
         }
     }
 
@@ -27,14 +41,32 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
         return accounts.get(accountId);
     }
 
+    @Override
+    public Collection<Account> getAccounts() {
+        return accounts.values();
+    }
+
     @Override
     public void clearAccounts() {
         accounts.clear();
+        changeListeners.forEach(AccountChangeListener::accountsCleared);
     }
 
     @Override
     public void updateAccount(String accountId, BigDecimal amount) {
         accounts.get(accountId).setBalance(amount);
+        fireAccountChanged(accountId, amount);
+    }
+
+    @Override
+    public void addChangeListener(AccountChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    private void fireAccountChanged(String accountId, BigDecimal balance) {
+        for (AccountChangeListener listener : changeListeners) {
+            listener.accountChanged(accountId, balance);
+        }
     }
 
 }
@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append only journal of single line records.
+ * Every record is flushed before {@link #append(String)} returns, so it survives a restart of the application.
+ */
+@Slf4j
+public class FileJournal implements Closeable {
+
+    private final Path path;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private BufferedWriter writer;
+
+    public FileJournal(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Read all records which were appended so far
+     *
+     * @return records in the order they were appended
+     */
+    public List<String> readAll() {
+        lock.lock();
+        try {
+            return Files.exists(path) ? Files.readAllLines(path, StandardCharsets.UTF_8) : Collections.emptyList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal " + path + " can not be read", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void append(String record) {
+        lock.lock();
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(record);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal " + path + " can not be written", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace the journal with the given records (compaction)
+     *
+     * @param records which are still relevant
+     */
+    public void rewrite(Collection<String> records) {
+        lock.lock();
+        try {
+            close();
+            Path compacted = path.resolveSibling(path.getFileName() + ".compacted");
+            Files.write(compacted, records, StandardCharsets.UTF_8);
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Journal {} was compacted to {} records", path, records.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal " + path + " can not be compacted", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
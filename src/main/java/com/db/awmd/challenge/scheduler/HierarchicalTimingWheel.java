@@ -0,0 +1,236 @@
+package com.db.awmd.challenge.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel (Varghese and Lauck).
+ * Level 0 has {@code wheelSize} buckets of {@code tickMillis}, every next level has buckets which are
+ * {@code wheelSize} times wider. Timers are cascaded to the lower level when their bucket comes around,
+ * so scheduling and cancelling are O(1) and advancing costs O(1) per tick plus O(1) per expired timer.
+ * Levels are added lazily, so any expiration can be scheduled.
+ * <p>
+ * The wheel is not thread safe, the owner is responsible for the locking.
+ *
+ * @param <T> payload of the timers
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMillis;
+
+    private final int wheelSize;
+
+    private final List<Level<T>> levels = new ArrayList<>();
+
+    private final Bucket<T> due = new Bucket<>();
+
+    private long currentTime;
+
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startTime) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTime = startTime - startTime % tickMillis;
+        this.levels.add(new Level<>(tickMillis, wheelSize));
+    }
+
+    /**
+     * Schedule the payload
+     *
+     * @param payload    which will be returned on expiration
+     * @param expiration epoch millis
+     * @return timer which can be cancelled
+     */
+    public Timer<T> schedule(T payload, long expiration) {
+        Timer<T> timer = new Timer<>(payload, expiration);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Cancel the timer
+     *
+     * @param timer which was returned by {@link #schedule(Object, long)}
+     * @return false if the timer has already expired or was cancelled
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (timer.bucket == null) {
+            return false;
+        }
+        timer.bucket.remove(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advance the wheel up to the given time
+     *
+     * @param now     epoch millis
+     * @param expired receives the payloads of the expired timers, in the order of their buckets
+     */
+    public void advance(long now, Consumer<T> expired) {
+        drainDue(expired);
+        while (currentTime + tickMillis <= now) {
+            if (size == 0) {
+                currentTime = now - now % tickMillis;
+                return;
+            }
+            currentTime += tickMillis;
+            for (int i = levels.size() - 1; i > 0; i--) {
+                Level<T> level = levels.get(i);
+                if (currentTime % level.tickMillis == 0) {
+                    replace(level.bucketFor(currentTime / level.tickMillis));
+                }
+            }
+            replace(levels.get(0).bucketFor(currentTime / tickMillis));
+            drainDue(expired);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void place(Timer<T> timer) {
+        long ticks = (timer.expiration + tickMillis - 1) / tickMillis;
+        long currentTicks = currentTime / tickMillis;
+        if (ticks <= currentTicks) {
+            due.add(timer);
+            return;
+        }
+        if (ticks - currentTicks <= wheelSize) {
+            levels.get(0).bucketFor(ticks).add(timer);
+            return;
+        }
+        for (int i = 1; ; i++) {
+            if (i == levels.size()) {
+                Level<T> previous = levels.get(i - 1);
+                levels.add(new Level<>(previous.tickMillis * wheelSize, wheelSize));
+            }
+            Level<T> level = levels.get(i);
+            long levelTicks = timer.expiration / level.tickMillis;
+            if (levelTicks - currentTime / level.tickMillis <= wheelSize) {
+                level.bucketFor(levelTicks).add(timer);
+                return;
+            }
+        }
+    }
+
+    private void replace(Bucket<T> bucket) {
+        Timer<T> timer = bucket.detach();
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            timer.next = null;
+            timer.prev = null;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    private void drainDue(Consumer<T> expired) {
+        Timer<T> timer = due.detach();
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            timer.next = null;
+            timer.prev = null;
+            size--;
+            expired.accept(timer.payload);
+            timer = next;
+        }
+    }
+
+    public static final class Timer<T> {
+
+        private final T payload;
+
+        private final long expiration;
+
+        private Bucket<T> bucket;
+
+        private Timer<T> prev;
+
+        private Timer<T> next;
+
+        private Timer(T payload, long expiration) {
+            this.payload = payload;
+            this.expiration = expiration;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        public long getExpiration() {
+            return expiration;
+        }
+    }
+
+    private static final class Level<T> {
+
+        private final long tickMillis;
+
+        private final Bucket<T>[] buckets;
+
+        @SuppressWarnings("unchecked")
+        private Level(long tickMillis, int wheelSize) {
+            this.tickMillis = tickMillis;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket<>();
+            }
+        }
+
+        private Bucket<T> bucketFor(long ticks) {
+            return buckets[(int) (ticks % buckets.length)];
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list of timers
+     */
+    private static final class Bucket<T> {
+
+        private Timer<T> head;
+
+        private void add(Timer<T> timer) {
+            timer.bucket = this;
+            timer.prev = null;
+            timer.next = head;
+            if (head != null) {
+                head.prev = timer;
+            }
+            head = timer;
+        }
+
+        private void remove(Timer<T> timer) {
+            if (timer.prev != null) {
+                timer.prev.next = timer.next;
+            } else {
+                head = timer.next;
+            }
+            if (timer.next != null) {
+                timer.next.prev = timer.prev;
+            }
+            timer.bucket = null;
+            timer.prev = null;
+            timer.next = null;
+        }
+
+        /**
+         * Empty the bucket
+         *
+         * @return the first timer of the detached list, linked by {@code next}
+         */
+        private Timer<T> detach() {
+            Timer<T> first = head;
+            for (Timer<T> timer = head; timer != null; timer = timer.next) {
+                timer.bucket = null;
+            }
+            head = null;
+            return first;
+        }
+    }
+}
@@ -2,10 +2,17 @@ package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.exception.ReadOnlyReplicaException;
 import com.db.awmd.challenge.exception.TransferException;
+import com.db.awmd.challenge.profiler.LockContentionProfiler;
+import com.db.awmd.challenge.replication.ReplicationService;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.validator.TransferErrorCode;
 import com.db.awmd.challenge.validator.TransferInitialValidator;
 import com.db.awmd.challenge.validator.TransferValidator;
+import com.db.awmd.challenge.velocity.VelocityLimiter;
+import jakarta.validation.ValidationException;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -14,9 +21,15 @@ import org.springframework.validation.Errors;
 import org.springframework.validation.ObjectError;
 import org.springframework.validation.Validator;
 
-import javax.validation.ValidationException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
@@ -24,6 +37,8 @@ import java.util.stream.Collectors;
 @Service
 public class AccountsService {
 
+    private static final int LOCK_TIMEOUT = 100;
+
     @Getter
     private final AccountsRepository accountsRepository;
     @Autowired
@@ -32,65 +47,320 @@ public class AccountsService {
     private TransferInitialValidator transferInitialValidator;
     @Autowired
     private NotificationService notificationService;
+    @Autowired
+    private LockContentionProfiler lockContentionProfiler;
+    @Autowired
+    private ReplicationService replicationService;
+    @Autowired
+    private VelocityLimiter velocityLimiter;
 
     @Autowired
     public AccountsService(AccountsRepository accountsRepository) {
         this.accountsRepository = accountsRepository;
     }
 
+    /**
+     * @throws ValidationException if the velocity tier of the account is not configured
+     */
     public void createAccount(Account account) {
+        replicationService.checkWritable();
+        if (!velocityLimiter.isKnownTier(account.getTier())) {
+            throw new ValidationException("Velocity tier " + account.getTier() + " is not configured");
+        }
         this.accountsRepository.createAccount(account);
     }
 
+    /**
+     * @throws ReadOnlyReplicaException on a follower
+     */
+    public void checkWritable() {
+        replicationService.checkWritable();
+    }
+
     public Account getAccount(String accountId) {
         return this.accountsRepository.getAccount(accountId);
     }
 
     public void transfer(String accountFromId, String accountToId, BigDecimal amountToTransfer) {
+        replicationService.checkWritable();
         Transfer transfer = new Transfer(accountFromId, accountToId, amountToTransfer);
         validateTransfer(transfer, transferInitialValidator);
 
-        final int LOCK_TIMEOUT = 100;
-        final ReentrantLock accountFromLock = accountsRepository.getAccount(transfer.getAccountFromId()).getLock();
-        final ReentrantLock accountToLock = accountsRepository.getAccount(transfer.getAccountToId()).getLock();
+        final Account accountFrom = accountsRepository.getAccount(transfer.getAccountFromId());
+        final Account accountTo = accountsRepository.getAccount(transfer.getAccountToId());
+        //Locks are always taken in the account id order, so opposite transfers can not deadlock,
+        //but they still wait for each other on the same pair of accounts
+        final boolean fromFirst = accountFrom.getAccountId().compareTo(accountTo.getAccountId()) < 0;
+        final Account firstLocked = fromFirst ? accountFrom : accountTo;
+        final Account secondLocked = fromFirst ? accountTo : accountFrom;
 
         try {
-            Account accountFrom = null;
-            Account accountTo = null;
-            if (accountFromLock.tryLock(LOCK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            if (!tryLock(firstLocked)) {
+                throw new TransferException("Money were not transferred");
+            }
+            try {
+                if (!tryLock(secondLocked)) {
+                    throw new TransferException("Money were not transferred");
+                }
                 try {
-                    if (accountToLock.tryLock(LOCK_TIMEOUT, TimeUnit.MILLISECONDS)) {
-                        try {
-                            accountFrom = accountsRepository.getAccount(transfer.getAccountFromId());
-                            accountTo = accountsRepository.getAccount(transfer.getAccountToId());
+                    validateTransfer(transfer, transferValidator);
+
+                    accountsRepository.updateAccount(accountFrom.getAccountId(),
+                            accountFrom.withdrawMoney(transfer.getAmountToTransfer()));
+                    accountsRepository.updateAccount(accountTo.getAccountId(),
+                            accountTo.depositMoney(transfer.getAmountToTransfer()));
+                    //Recorded under the lock of the account from, so the next transfer is checked against it
+                    velocityLimiter.record(accountFrom, transfer.getAmountToTransfer());
+
+                } finally {
+                    secondLocked.getLock().unlock();
+                }
+            } finally {
+                firstLocked.getLock().unlock();
+            }
+        } catch (InterruptedException e) {
+            throw new TransferException("Money were not transferred because of interruption");
+        }
+
+        notificationService.notifyAboutTransfer(accountFrom,
+                "Account Id: " + accountFrom.getAccountId() + " was withdraw." +
+                        " Now it has balance: " + accountFrom.getBalance());
+        notificationService.notifyAboutTransfer(accountTo,
+                "Account Id: " + accountTo.getAccountId() + " was deposit." +
+                        " Now it has balance: " + accountTo.getBalance());
+    }
+
+    /**
+     * Withdraw money from a single account, e.g. to hold it for a transfer to another cluster node.
+     * The operation is applied at most once, the id is stored together with the balance change.
+     *
+     * @param accountId   which will be withdraw
+     * @param amount      which will be withdraw
+     * @param operationId id of the withdrawal
+     * @return false if the operation was already applied
+     */
+    public boolean withdraw(String accountId, BigDecimal amount, String operationId) {
+        replicationService.checkWritable();
+        Account account = accountsRepository.getAccount(accountId);
+        if (account == null) {
+            throw new ValidationException("Error list is: " + TransferErrorCode.ACCOUNT_FROM_ID_NOT_FOUND);
+        }
+        try {
+            if (!tryLock(account)) {
+                throw new TransferException("Money were not withdrawn");
+            }
+            try {
+                if (account.getAppliedOperations().contains(operationId)) {
+                    return false;
+                }
+                if (account.getBalance().compareTo(amount) < 0) {
+                    throw new ValidationException("Error list is: "
+                            + TransferErrorCode.ACCOUNT_FROM_ID_DO_NOT_HAVE_ENOUGH_MONEY);
+                }
+                if (!velocityLimiter.tryRecord(account, amount)) {
+                    throw new ValidationException("Error list is: " + TransferErrorCode.VELOCITY_LIMIT_EXCEEDED);
+                }
+                accountsRepository.updateAccount(accountId, account.withdrawMoney(amount));
+                account.getAppliedOperations().add(operationId);
+            } finally {
+                account.getLock().unlock();
+            }
+        } catch (InterruptedException e) {
+            throw new TransferException("Money were not withdrawn because of interruption");
+        }
+        notificationService.notifyAboutTransfer(account,
+                "Account Id: " + accountId + " was withdraw. Now it has balance: " + account.getBalance());
+        return true;
+    }
+
+    /**
+     * Deposit money to a single account, e.g. when a transfer from another cluster node is committed.
+     * The operation is applied at most once, the id is stored together with the balance change.
+     *
+     * @param accountId   which will be deposit
+     * @param amount      which will be deposit
+     * @param operationId id of the deposit
+     * @return false if the operation was already applied
+     */
+    public boolean deposit(String accountId, BigDecimal amount, String operationId) {
+        replicationService.checkWritable();
+        Account account = accountsRepository.getAccount(accountId);
+        if (account == null) {
+            throw new ValidationException("Error list is: " + TransferErrorCode.ACCOUNT_TO_ID_NOT_FOUND);
+        }
+        try {
+            if (!tryLock(account)) {
+                throw new TransferException("Money were not deposited");
+            }
+            try {
+                if (!account.getAppliedOperations().add(operationId)) {
+                    return false;
+                }
+                accountsRepository.updateAccount(accountId, account.depositMoney(amount));
+            } finally {
+                account.getLock().unlock();
+            }
+        } catch (InterruptedException e) {
+            throw new TransferException("Money were not deposited because of interruption");
+        }
+        notificationService.notifyAboutTransfer(account,
+                "Account Id: " + accountId + " was deposit. Now it has balance: " + account.getBalance());
+        return true;
+    }
 
-                            validateTransfer(transfer, transferValidator);
+    /**
+     * @return true if the operation was applied to the account (and not forgotten yet)
+     */
+    public boolean isApplied(String accountId, String operationId) {
+        Account account = accountsRepository.getAccount(accountId);
+        if (account == null) {
+            return false;
+        }
+        account.getLock().lock();
+        try {
+            return account.getAppliedOperations().contains(operationId);
+        } finally {
+            account.getLock().unlock();
+        }
+    }
 
-                            accountsRepository.updateAccount(accountFrom.getAccountId(),
-                                    accountFrom.withdrawMoney(transfer.getAmountToTransfer()));
-                            accountsRepository.updateAccount(accountTo.getAccountId(),
-                                    accountTo.depositMoney(transfer.getAmountToTransfer()));
+    /**
+     * Forget the operations whose outcome is recorded elsewhere, so they are not kept forever
+     */
+    public void forgetOperations(String accountId, String... operationIds) {
+        Account account = accountsRepository.getAccount(accountId);
+        if (account == null) {
+            return;
+        }
+        account.getLock().lock();
+        try {
+            account.getAppliedOperations().removeAll(Arrays.asList(operationIds));
+        } finally {
+            account.getLock().unlock();
+        }
+    }
 
-                        } finally {
-                            accountToLock.unlock();
-                        }
+    /**
+     * Apply a batch of transfers as one netted settlement.
+     * Every involved account is locked once (in the account id order), the transfers are checked one by one
+     * in the given order against the running balances and only the net balance change of each account is written.
+     *
+     * @param transfers which will be netted, in the order they were requested
+     * @return outcome of every transfer, in the same order
+     */
+    public List<TransferOutcome> transferNetted(List<Transfer> transfers) {
+        replicationService.checkWritable();
+        List<TransferOutcome> outcomes = new ArrayList<>(transfers.size());
+        Map<String, Account> accounts = new TreeMap<>();
+        for (Transfer transfer : transfers) {
+            String errorCodes = collectErrorCodes(transfer, transferInitialValidator);
+            if (errorCodes.isEmpty()) {
+                errorCodes = collectAccounts(transfer, accounts);
+            }
+            outcomes.add(errorCodes.isEmpty() ? null : TransferOutcome.rejected(transfer, errorCodes));
+        }
+
+        Set<String> settledAccountIds = new HashSet<>();
+        List<ReentrantLock> acquiredLocks = new ArrayList<>(accounts.size());
+        try {
+            for (Account account : accounts.values()) {
+                if (!tryLock(account)) {
+                    throw new TransferException("Money were not transferred");
+                }
+                acquiredLocks.add(account.getLock());
+            }
+
+            Map<String, BigDecimal> balances = new HashMap<>();
+            accounts.forEach((accountId, account) -> balances.put(accountId, account.getBalance()));
+            for (int i = 0; i < transfers.size(); i++) {
+                if (outcomes.get(i) == null) {
+                    TransferOutcome outcome = applyToBalances(transfers.get(i), accounts, balances);
+                    if (outcome.getStatus() == TransferOutcome.Status.APPLIED) {
+                        settledAccountIds.add(outcome.getTransfer().getAccountFromId());
+                        settledAccountIds.add(outcome.getTransfer().getAccountToId());
                     }
-                } finally {
-                    accountFromLock.unlock();
+                    outcomes.set(i, outcome);
                 }
+            }
 
-                notificationService.notifyAboutTransfer(accountFrom,
-                        "Account Id: " + accountFrom.getAccountId() + " was withdraw." +
-                                " Now it has balance: " + accountFrom.getBalance());
-                notificationService.notifyAboutTransfer(accountTo,
-                        "Account Id: " + accountTo.getAccountId() + " was deposit." +
-                                " Now it has balance: " + accountTo.getBalance());
-            } else {
-                throw new TransferException("Money were not transferred");
+            for (Account account : accounts.values()) {
+                BigDecimal balance = balances.get(account.getAccountId());
+                if (balance.compareTo(account.getBalance()) != 0) {
+                    accountsRepository.updateAccount(account.getAccountId(), balance);
+                }
             }
         } catch (InterruptedException e) {
             throw new TransferException("Money were not transferred because of interruption");
+        } finally {
+            acquiredLocks.forEach(ReentrantLock::unlock);
+        }
+
+        accounts.values().stream()
+                .filter(account -> settledAccountIds.contains(account.getAccountId()))
+                .forEach(account -> notificationService.notifyAboutTransfer(account,
+                        "Account Id: " + account.getAccountId() + " was settled." +
+                                " Now it has balance: " + account.getBalance()));
+        return outcomes;
+    }
+
+    /**
+     * Lock the account, a contended acquisition is recorded by the {@link LockContentionProfiler}.
+     * The account locks and everything which is called while they are held use java.util.concurrent locks,
+     * not monitors, so a virtual thread which waits here unmounts from its carrier thread instead of pinning it.
+     *
+     * @param account which will be locked
+     * @return false if the lock was not acquired within the timeout
+     */
+    private boolean tryLock(Account account) throws InterruptedException {
+        ReentrantLock lock = account.getLock();
+        if (lock.tryLock()) {
+            return true;
+        }
+        long startNanos = System.nanoTime();
+        boolean locked = lock.tryLock(LOCK_TIMEOUT, TimeUnit.MILLISECONDS);
+        lockContentionProfiler.record(account.getAccountId(), System.nanoTime() - startNanos, !locked);
+        return locked;
+    }
+
+    private String collectAccounts(Transfer transfer, Map<String, Account> accounts) {
+        Account accountFrom = accountsRepository.getAccount(transfer.getAccountFromId());
+        if (accountFrom == null) {
+            return TransferErrorCode.ACCOUNT_FROM_ID_NOT_FOUND.name();
+        }
+        Account accountTo = accountsRepository.getAccount(transfer.getAccountToId());
+        if (accountTo == null) {
+            return TransferErrorCode.ACCOUNT_TO_ID_NOT_FOUND.name();
         }
+        accounts.put(accountFrom.getAccountId(), accountFrom);
+        accounts.put(accountTo.getAccountId(), accountTo);
+        return "";
+    }
+
+    private TransferOutcome applyToBalances(Transfer transfer, Map<String, Account> accounts,
+                                            Map<String, BigDecimal> balances) {
+        BigDecimal balanceFrom = balances.get(transfer.getAccountFromId());
+        BigDecimal balanceTo = balances.get(transfer.getAccountToId());
+        if (balanceFrom.compareTo(BigDecimal.ZERO) < 0) {
+            return TransferOutcome.rejected(transfer, TransferErrorCode.ACCOUNT_FROM_BALANCE_NEGATIVE.name());
+        }
+        if (balanceFrom.compareTo(transfer.getAmountToTransfer()) < 0) {
+            return TransferOutcome.rejected(transfer, TransferErrorCode.ACCOUNT_FROM_ID_DO_NOT_HAVE_ENOUGH_MONEY.name());
+        }
+        if (balanceTo.compareTo(BigDecimal.ZERO) < 0) {
+            return TransferOutcome.rejected(transfer, TransferErrorCode.ACCOUNT_TO_BALANCE_NEGATIVE.name());
+        }
+        if (!velocityLimiter.tryRecord(accounts.get(transfer.getAccountFromId()), transfer.getAmountToTransfer())) {
+            return TransferOutcome.rejected(transfer, TransferErrorCode.VELOCITY_LIMIT_EXCEEDED.name());
+        }
+        balances.put(transfer.getAccountFromId(), balanceFrom.subtract(transfer.getAmountToTransfer()));
+        balances.put(transfer.getAccountToId(), balanceTo.add(transfer.getAmountToTransfer()));
+        return TransferOutcome.applied(transfer);
+    }
+
+    private String collectErrorCodes(Transfer transfer, Validator validator) {
+        Errors errors = new BindException(transfer, "transfer");
+        validator.validate(transfer, errors);
+        return errors.getAllErrors().stream().map(ObjectError::getCode).collect(Collectors.joining(","));
     }
 
     private void validateTransfer(Transfer transfer, Validator validator) throws ValidationException {
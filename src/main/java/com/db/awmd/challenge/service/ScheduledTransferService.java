@@ -0,0 +1,390 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.exception.ReadOnlyReplicaException;
+import com.db.awmd.challenge.exception.TransferException;
+import com.db.awmd.challenge.repository.FileJournal;
+import com.db.awmd.challenge.scheduler.HierarchicalTimingWheel;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Holds future dated and recurring transfers in a {@link HierarchicalTimingWheel}.
+ * Due transfers are released in batches into {@link AccountsService#transferNetted(List)} on the dispatcher threads,
+ * so a spike of due transfers does not occupy the request threads.
+ * Every change is written to a {@link FileJournal} which is replayed (and compacted) on start.
+ * The journal is also compacted once its records outnumber the pending transfers by the compaction ratio,
+ * so recurring transfers do not grow it without bound.
+ * The transfers of a batch are journaled as released before the money moves, so an occurrence which was released
+ * but not completed before a crash is skipped on start instead of being transferred twice.
+ * A batch which failed is journaled as rescheduled, so it is not skipped on start.
+ * On a read only follower transfers can not be scheduled and the wheel is not advanced.
+ */
+@Service
+@Slf4j
+public class ScheduledTransferService {
+
+    private static final String SCHEDULED = "S";
+    private static final String RESCHEDULED = "R";
+    private static final String COMPLETED = "C";
+    private static final String RELEASED = "X";
+    private static final String SEPARATOR = "\t";
+
+    private final AccountsService accountsService;
+
+    private final ObjectMapper objectMapper;
+
+    private final long tickMillis;
+
+    private final int batchSize;
+
+    private final long retryDelayMillis;
+
+    private final int compactionRatio;
+
+    private final FileJournal journal;
+
+    private final HierarchicalTimingWheel<ScheduledTransfer> wheel;
+
+    private final Map<String, HierarchicalTimingWheel.Timer<ScheduledTransfer>> timers = new HashMap<>();
+
+    /**
+     * Ids of the transfers which were released but are not settled yet
+     */
+    private final Set<String> released = new HashSet<>();
+
+    private long journalRecords;
+
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+
+    private final ExecutorService dispatcher;
+
+    /**
+     * Guards the wheel, the timers, the released transfers and the journal
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Autowired
+    public ScheduledTransferService(AccountsService accountsService, ObjectMapper objectMapper,
+                                    @Value("${transfer.scheduler.tick-millis:100}") long tickMillis,
+                                    @Value("${transfer.scheduler.wheel-size:64}") int wheelSize,
+                                    @Value("${transfer.scheduler.batch-size:500}") int batchSize,
+                                    @Value("${transfer.scheduler.dispatch-threads:2}") int dispatchThreads,
+                                    @Value("${transfer.scheduler.retry-delay-millis:1000}") long retryDelayMillis,
+                                    @Value("${transfer.scheduler.compaction-ratio:4}") int compactionRatio,
+                                    @Value("${transfer.scheduler.journal-path:moneyTransferScheduled.journal}")
+                                            String journalPath,
+                                    @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.accountsService = accountsService;
+        this.objectMapper = objectMapper;
+        this.tickMillis = tickMillis;
+        this.batchSize = batchSize;
+        this.retryDelayMillis = retryDelayMillis;
+        this.compactionRatio = compactionRatio;
+        this.journal = new FileJournal(Paths.get(journalPath));
+        this.wheel = new HierarchicalTimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+        this.dispatcher = TransferThreads.newExecutor("scheduled-transfers", dispatchThreads, virtualThreads);
+    }
+
+    @PostConstruct
+    public void start() {
+        recover();
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        ticker.shutdown();
+        dispatcher.shutdown();
+        journal.close();
+    }
+
+    /**
+     * @throws ReadOnlyReplicaException on a follower
+     */
+    public ScheduledTransfer schedule(ScheduledTransfer scheduledTransfer) {
+        accountsService.checkWritable();
+        scheduledTransfer.setId(UUID.randomUUID().toString());
+        lock.lock();
+        try {
+            append(SCHEDULED + SEPARATOR + toJson(scheduledTransfer));
+            timers.put(scheduledTransfer.getId(), wheel.schedule(scheduledTransfer, scheduledTransfer.getDueAt()));
+            compactIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+        log.info("Transfer {} was scheduled", scheduledTransfer);
+        return scheduledTransfer;
+    }
+
+    /**
+     * Cancel the scheduled transfer. The occurrence which is being transferred right now is not cancelled.
+     *
+     * @param id of the scheduled transfer
+     * @return false if there is no such scheduled transfer
+     */
+    public boolean cancel(String id) {
+        lock.lock();
+        try {
+            HierarchicalTimingWheel.Timer<ScheduledTransfer> timer = timers.remove(id);
+            if (timer == null) {
+                return false;
+            }
+            wheel.cancel(timer);
+            released.remove(id);
+            append(COMPLETED + SEPARATOR + id);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public ScheduledTransfer getScheduledTransfer(String id) {
+        lock.lock();
+        try {
+            HierarchicalTimingWheel.Timer<ScheduledTransfer> timer = timers.get(id);
+            return timer == null ? null : timer.getPayload();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return timers.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void tick() {
+        try {
+            accountsService.checkWritable();
+        } catch (ReadOnlyReplicaException e) {
+            return;
+        }
+        try {
+            List<ScheduledTransfer> dueTransfers = new ArrayList<>();
+            lock.lock();
+            try {
+                wheel.advance(System.currentTimeMillis(), dueTransfers::add);
+            } finally {
+                lock.unlock();
+            }
+            for (int from = 0; from < dueTransfers.size(); from += batchSize) {
+                List<ScheduledTransfer> batch = dueTransfers.subList(from, Math.min(from + batchSize, dueTransfers.size()));
+                dispatcher.execute(() -> release(batch));
+            }
+        } catch (RuntimeException e) {
+            log.error("Scheduled transfers were not released", e);
+        }
+    }
+
+    private void release(List<ScheduledTransfer> batch) {
+        lock.lock();
+        try {
+            append(RELEASED + SEPARATOR + batch.stream().map(ScheduledTransfer::getId)
+                    .collect(Collectors.joining(",")));
+            batch.forEach(scheduledTransfer -> released.add(scheduledTransfer.getId()));
+        } finally {
+            lock.unlock();
+        }
+        settle(batch);
+    }
+
+    private void settle(List<ScheduledTransfer> batch) {
+        List<Transfer> transfers = batch.stream().map(ScheduledTransfer::toTransfer).collect(Collectors.toList());
+        List<TransferOutcome> outcomes;
+        try {
+            outcomes = accountsService.transferNetted(transfers);
+        } catch (TransferException e) {
+            if (batch.size() > 1) {
+                // the batch is split until only the transfers of the accounts which could not be locked are left
+                int half = batch.size() / 2;
+                settle(batch.subList(0, half));
+                settle(batch.subList(half, batch.size()));
+                return;
+            }
+            log.warn("Scheduled transfer {} will be retried: {}", batch.get(0).getId(), e.getMessage());
+            retry(batch);
+            return;
+        } catch (RuntimeException e) {
+            log.error("Scheduled transfers {} will be retried",
+                    batch.stream().map(ScheduledTransfer::getId).collect(Collectors.toList()), e);
+            retry(batch);
+            return;
+        }
+
+        lock.lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                ScheduledTransfer scheduledTransfer = batch.get(i);
+                log.info("Scheduled transfer {} was {}", scheduledTransfer.getId(), outcomes.get(i));
+                released.remove(scheduledTransfer.getId());
+                if (timers.containsKey(scheduledTransfer.getId())) {
+                    completed(scheduledTransfer);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Journal the transfers of the batch as rescheduled at their unchanged due time, so they are not skipped on
+     * start, and release them again after the retry delay
+     */
+    private void retry(List<ScheduledTransfer> batch) {
+        lock.lock();
+        try {
+            long retryAt = System.currentTimeMillis() + retryDelayMillis;
+            for (ScheduledTransfer scheduledTransfer : batch) {
+                released.remove(scheduledTransfer.getId());
+                if (timers.containsKey(scheduledTransfer.getId())) {
+                    append(RESCHEDULED + SEPARATOR + scheduledTransfer.getId() + SEPARATOR
+                            + scheduledTransfer.getDueAt());
+                    timers.put(scheduledTransfer.getId(), wheel.schedule(scheduledTransfer, retryAt));
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void completed(ScheduledTransfer scheduledTransfer) {
+        if (scheduledTransfer.isRecurring()) {
+            scheduledTransfer.setDueAt(scheduledTransfer.getDueAt() + scheduledTransfer.getIntervalMillis());
+            append(RESCHEDULED + SEPARATOR + scheduledTransfer.getId() + SEPARATOR + scheduledTransfer.getDueAt());
+            timers.put(scheduledTransfer.getId(), wheel.schedule(scheduledTransfer, scheduledTransfer.getDueAt()));
+        } else {
+            timers.remove(scheduledTransfer.getId());
+            append(COMPLETED + SEPARATOR + scheduledTransfer.getId());
+        }
+    }
+
+    private void append(String record) {
+        journal.append(record);
+        journalRecords++;
+    }
+
+    /**
+     * Rewrite the journal with the pending transfers once the records outnumber them by the compaction ratio.
+     * The transfers which are being settled stay released, so they are still skipped after a crash.
+     */
+    private void compactIfNeeded() {
+        if (journalRecords <= (long) compactionRatio * Math.max(timers.size(), 1)) {
+            return;
+        }
+        List<String> records = timers.values().stream()
+                .map(timer -> SCHEDULED + SEPARATOR + toJson(timer.getPayload()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (!released.isEmpty()) {
+            records.add(RELEASED + SEPARATOR + String.join(",", released));
+        }
+        journal.rewrite(records);
+        journalRecords = records.size();
+    }
+
+    private void recover() {
+        lock.lock();
+        try {
+            Map<String, ScheduledTransfer> pending = new LinkedHashMap<>();
+            Set<String> releasedBeforeRestart = new HashSet<>();
+            for (String record : journal.readAll()) {
+                String[] fields = record.split(SEPARATOR, 3);
+                switch (fields[0]) {
+                    case SCHEDULED:
+                        ScheduledTransfer scheduledTransfer = fromJson(fields[1]);
+                        pending.put(scheduledTransfer.getId(), scheduledTransfer);
+                        break;
+                    case RELEASED:
+                        releasedBeforeRestart.addAll(Arrays.asList(fields[1].split(",")));
+                        break;
+                    case RESCHEDULED:
+                        releasedBeforeRestart.remove(fields[1]);
+                        if (pending.containsKey(fields[1])) {
+                            pending.get(fields[1]).setDueAt(Long.valueOf(fields[2]));
+                        }
+                        break;
+                    case COMPLETED:
+                        releasedBeforeRestart.remove(fields[1]);
+                        pending.remove(fields[1]);
+                        break;
+                    default:
+                        log.warn("Unknown journal record was skipped: {}", record);
+                }
+            }
+
+            for (String id : releasedBeforeRestart) {
+                ScheduledTransfer scheduledTransfer = pending.get(id);
+                if (scheduledTransfer == null) {
+                    continue;
+                }
+                log.warn("Scheduled transfer {} was released before the restart, its occurrence due at {} is skipped",
+                        id, scheduledTransfer.getDueAt());
+                if (scheduledTransfer.isRecurring()) {
+                    scheduledTransfer.setDueAt(scheduledTransfer.getDueAt() + scheduledTransfer.getIntervalMillis());
+                } else {
+                    pending.remove(id);
+                }
+            }
+
+            journal.rewrite(pending.values().stream()
+                    .map(scheduledTransfer -> SCHEDULED + SEPARATOR + toJson(scheduledTransfer))
+                    .collect(Collectors.toList()));
+            journalRecords = pending.size();
+            pending.values().forEach(scheduledTransfer -> timers.put(scheduledTransfer.getId(),
+                    wheel.schedule(scheduledTransfer, scheduledTransfer.getDueAt())));
+            log.info("{} scheduled transfers were recovered", pending.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String toJson(ScheduledTransfer scheduledTransfer) {
+        try {
+            return objectMapper.writeValueAsString(scheduledTransfer);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ScheduledTransfer fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, ScheduledTransfer.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
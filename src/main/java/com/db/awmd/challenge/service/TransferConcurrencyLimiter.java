@@ -0,0 +1,118 @@
+package com.db.awmd.challenge.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive (AIMD) limit of the transfers which are executed at the same time.
+ * The limit grows by one per round trip while transfers are fast and is cut by the backoff ratio
+ * when a transfer is slower than the latency threshold or was not transferred at all (lock timeout).
+ * It is cut at most once per round trip: a transfer which started before the last cut saw the old limit,
+ * so it does not cut the limit again.
+ */
+@Component
+@Slf4j
+public class TransferConcurrencyLimiter {
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long latencyThresholdNanos;
+
+    private final double backoffRatio;
+
+    @Getter
+    private final long retryAfterSeconds;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final ReentrantLock limitLock = new ReentrantLock();
+
+    private volatile double limit;
+
+    /**
+     * {@link System#nanoTime()} of the last decrease of the limit, guarded by the limit lock
+     */
+    private long lastDecreaseNanos;
+
+    @Autowired
+    public TransferConcurrencyLimiter(@Value("${transfer.limiter.initial-limit:20}") int initialLimit,
+                                      @Value("${transfer.limiter.min-limit:4}") int minLimit,
+                                      @Value("${transfer.limiter.max-limit:1000}") int maxLimit,
+                                      @Value("${transfer.limiter.latency-threshold-millis:50}") long latencyThresholdMillis,
+                                      @Value("${transfer.limiter.backoff-ratio:0.9}") double backoffRatio,
+                                      @Value("${transfer.limiter.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.backoffRatio = backoffRatio;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.lastDecreaseNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+    }
+
+    /**
+     * Try to admit one more transfer
+     *
+     * @return false if the transfer should be shed
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release the admitted transfer and adjust the limit
+     *
+     * @param latencyNanos how long the transfer took
+     * @param dropped      true if the transfer failed because of overload (lock timeout)
+     */
+    public void release(long latencyNanos, boolean dropped) {
+        release(latencyNanos, dropped, System.nanoTime());
+    }
+
+    /**
+     * @param nowNanos {@link System#nanoTime()} when the transfer finished
+     * @see #release(long, boolean)
+     */
+    public void release(long latencyNanos, boolean dropped, long nowNanos) {
+        int current = inFlight.getAndDecrement();
+        limitLock.lock();
+        try {
+            if (dropped || latencyNanos > latencyThresholdNanos) {
+                if (nowNanos - latencyNanos - lastDecreaseNanos > 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = nowNanos;
+                    log.debug("Transfer limit was decreased to {}", limit);
+                }
+            } else if (current * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
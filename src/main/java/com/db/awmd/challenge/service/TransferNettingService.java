@@ -0,0 +1,133 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects transfers for a short window (or up to the batch size) and settles them
+ * with {@link AccountsService#transferNetted(List)}. A window never holds more than the batch size.
+ */
+@Service
+@Slf4j
+public class TransferNettingService {
+
+    private final AccountsService accountsService;
+
+    private final long windowMillis;
+
+    /**
+     * Most transfers which are settled together, also the limit of a batch which is submitted at once
+     */
+    @Getter
+    private final int batchSize;
+
+    private final ScheduledExecutorService executor;
+
+    private final ReentrantLock pendingLock = new ReentrantLock();
+
+    /**
+     * Id of the current window, a timer of a window which was already settled finds a newer id and does nothing
+     */
+    private long windowId;
+
+    private List<Transfer> pendingTransfers = new ArrayList<>();
+
+    private List<CompletableFuture<TransferOutcome>> pendingOutcomes = new ArrayList<>();
+
+    @Autowired
+    public TransferNettingService(AccountsService accountsService,
+                                  @Value("${transfer.netting.window-millis:50}") long windowMillis,
+                                  @Value("${transfer.netting.batch-size:1000}") int batchSize,
+                                  @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.accountsService = accountsService;
+        this.windowMillis = windowMillis;
+        this.batchSize = batchSize;
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                TransferThreads.factory("transfer-netting", virtualThreads));
+    }
+
+    /**
+     * Add the transfer to the current netting window
+     *
+     * @param transfer which will be settled
+     * @return outcome which is completed when the window is settled
+     */
+    public CompletableFuture<TransferOutcome> submit(Transfer transfer) {
+        CompletableFuture<TransferOutcome> outcome = new CompletableFuture<>();
+        pendingLock.lock();
+        try {
+            pendingTransfers.add(transfer);
+            pendingOutcomes.add(outcome);
+            if (pendingTransfers.size() >= batchSize) {
+                // The full window is taken right away, so no other transfer joins it before it is settled
+                List<Transfer> transfers = pendingTransfers;
+                List<CompletableFuture<TransferOutcome>> outcomes = pendingOutcomes;
+                nextWindow();
+                executor.execute(() -> settle(transfers, outcomes));
+            } else if (pendingTransfers.size() == 1) {
+                long window = windowId;
+                executor.schedule(() -> settleWindow(window), windowMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+        return outcome;
+    }
+
+    /**
+     * Settle the window when its time is up, unless it was already settled because it was full
+     */
+    private void settleWindow(long window) {
+        List<Transfer> transfers;
+        List<CompletableFuture<TransferOutcome>> outcomes;
+        pendingLock.lock();
+        try {
+            if (window != windowId) {
+                return;
+            }
+            transfers = pendingTransfers;
+            outcomes = pendingOutcomes;
+            nextWindow();
+        } finally {
+            pendingLock.unlock();
+        }
+        settle(transfers, outcomes);
+    }
+
+    private void nextWindow() {
+        windowId++;
+        pendingTransfers = new ArrayList<>();
+        pendingOutcomes = new ArrayList<>();
+    }
+
+    private void settle(List<Transfer> transfers, List<CompletableFuture<TransferOutcome>> outcomes) {
+        log.debug("Settling netting window of {} transfers", transfers.size());
+        try {
+            List<TransferOutcome> results = accountsService.transferNetted(transfers);
+            for (int i = 0; i < results.size(); i++) {
+                outcomes.get(i).complete(results.get(i));
+            }
+        } catch (RuntimeException e) {
+            outcomes.forEach(outcome -> outcome.completeExceptionally(e));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,92 @@
+package com.db.awmd.challenge.service;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads which execute the transfers off the request threads. With {@code spring.threads.virtual.enabled}
+ * they are virtual threads, so a transfer waiting for an account lock does not hold a platform thread.
+ */
+final class TransferThreads {
+
+    private TransferThreads() {
+    }
+
+    static ThreadFactory factory(String name, boolean virtualThreads) {
+        return virtualThreads
+                ? Thread.ofVirtual().name(name + "-", 0).factory()
+                : Thread.ofPlatform().name(name + "-", 0).factory();
+    }
+
+    /**
+     * @param maxConcurrency size of the pool of platform threads, or how many of the virtual threads which are
+     *                       started per task run at the same time
+     */
+    static ExecutorService newExecutor(String name, int maxConcurrency, boolean virtualThreads) {
+        return virtualThreads
+                ? new BoundedExecutor(Executors.newThreadPerTaskExecutor(factory(name, true)), maxConcurrency)
+                : Executors.newFixedThreadPool(maxConcurrency, factory(name, false));
+    }
+
+    /**
+     * Starts a thread per task, the tasks above the bound wait for a permit on their (virtual) thread
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService {
+
+        private final ExecutorService threads;
+
+        private final Semaphore permits;
+
+        BoundedExecutor(ExecutorService threads, int maxConcurrency) {
+            this.threads = threads;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            threads.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            threads.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return threads.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return threads.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return threads.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return threads.awaitTermination(timeout, unit);
+        }
+    }
+}
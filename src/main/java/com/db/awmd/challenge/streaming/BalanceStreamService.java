@@ -0,0 +1,237 @@
+package com.db.awmd.challenge.streaming;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.StreamStatistics;
+import com.db.awmd.challenge.exception.SubscriptionLimitException;
+import com.db.awmd.challenge.repository.AccountChangeListener;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams the balance changes of the subscribed accounts as server sent events.
+ * <p>
+ * The changing thread only stores the latest balance of the account and queues the account once, if somebody
+ * subscribed to it. A dispatcher thread hands the balance to the subscribers of the account and every subscriber
+ * is written to on its own virtual thread, so a client which stopped reading blocks only its own sender.
+ * A balance is conflated with the newer one at both steps, so neither a hot account nor a slow client makes
+ * anything grow but the number of subscriptions.
+ */
+@Service
+@Slf4j
+public class BalanceStreamService implements AccountChangeListener {
+
+    private final AccountsRepository accountsRepository;
+
+    private final int maxSubscribers;
+
+    private final long heartbeatMillis;
+
+    private final long timeoutMillis;
+
+    private final Set<BalanceSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Set<BalanceSubscriber>> subscribersByAccount = new ConcurrentHashMap<>();
+
+    /**
+     * Latest balances which were not dispatched yet
+     */
+    private final Map<String, BigDecimal> changedBalances = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<Runnable> dispatchTasks = new LinkedBlockingQueue<>();
+
+    private final ExecutorService senders = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("balance-stream-sender-", 0).factory());
+
+    private final Thread dispatcher = new Thread(this::dispatch, "balance-stream-dispatcher");
+
+    private final LongAdder sentBalances = new LongAdder();
+
+    private final LongAdder conflatedBalances = new LongAdder();
+
+    @Autowired
+    public BalanceStreamService(AccountsRepository accountsRepository,
+                                @Value("${streaming.max-subscribers:50000}") int maxSubscribers,
+                                @Value("${streaming.heartbeat-millis:15000}") long heartbeatMillis,
+                                @Value("${streaming.timeout-millis:0}") long timeoutMillis) {
+        this.accountsRepository = accountsRepository;
+        this.maxSubscribers = maxSubscribers;
+        this.heartbeatMillis = heartbeatMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.dispatcher.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        accountsRepository.addChangeListener(this);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.interrupt();
+        senders.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.getEmitter().complete());
+    }
+
+    @Override
+    public void accountChanged(String accountId, BigDecimal balance) {
+        if (!subscribersByAccount.containsKey(accountId)) {
+            return;
+        }
+        if (changedBalances.put(accountId, balance) == null) {
+            dispatchTasks.offer(() -> dispatch(accountId));
+        } else {
+            conflatedBalances.increment();
+        }
+    }
+
+    /**
+     * Subscribe to the balances of the accounts. The current balances are sent first, then every change.
+     *
+     * @param accountIds accounts of interest, unknown accounts are streamed once they are created
+     * @return emitter of the {@code balance} events
+     */
+    public SseEmitter subscribe(Collection<String> accountIds) {
+        return subscribe(accountIds, new SseEmitter(timeoutMillis));
+    }
+
+    /**
+     * Subscribe with the given emitter
+     *
+     * @return the emitter
+     */
+    public SseEmitter subscribe(Collection<String> accountIds, SseEmitter emitter) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new SubscriptionLimitException("Too many subscribers, the limit is " + maxSubscribers);
+        }
+        BalanceSubscriber subscriber = new BalanceSubscriber(new LinkedHashSet<>(accountIds), emitter);
+        subscriber.getEmitter().onCompletion(() -> unsubscribe(subscriber));
+        subscriber.getEmitter().onTimeout(() -> unsubscribe(subscriber));
+        subscribers.add(subscriber);
+        for (String accountId : subscriber.getAccountIds()) {
+            subscribersByAccount.compute(accountId, (id, accountSubscribers) -> {
+                Set<BalanceSubscriber> updated = accountSubscribers == null
+                        ? ConcurrentHashMap.newKeySet() : accountSubscribers;
+                updated.add(subscriber);
+                return updated;
+            });
+        }
+        // Read by the dispatcher, so the current balance can not overtake a change which is dispatched later
+        dispatchTasks.offer(() -> sendCurrentBalances(subscriber));
+        return subscriber.getEmitter();
+    }
+
+    public StreamStatistics getStatistics() {
+        StreamStatistics statistics = new StreamStatistics();
+        statistics.setSubscribers(subscribers.size());
+        statistics.setSubscribedAccounts(subscribersByAccount.size());
+        statistics.setSentBalances(sentBalances.sum());
+        statistics.setConflatedBalances(conflatedBalances.sum());
+        return statistics;
+    }
+
+    private void unsubscribe(BalanceSubscriber subscriber) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        for (String accountId : subscriber.getAccountIds()) {
+            subscribersByAccount.computeIfPresent(accountId, (id, accountSubscribers) -> {
+                accountSubscribers.remove(subscriber);
+                return accountSubscribers.isEmpty() ? null : accountSubscribers;
+            });
+        }
+    }
+
+    private void dispatch() {
+        long lastHeartbeat = System.currentTimeMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Runnable task = dispatchTasks.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    task.run();
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastHeartbeat >= heartbeatMillis) {
+                    lastHeartbeat = now;
+                    requestHeartbeats(now);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Balance was not dispatched", e);
+            }
+        }
+    }
+
+    private void dispatch(String accountId) {
+        BigDecimal balance = changedBalances.remove(accountId);
+        Set<BalanceSubscriber> accountSubscribers = subscribersByAccount.get(accountId);
+        if (balance == null || accountSubscribers == null) {
+            return;
+        }
+        for (BalanceSubscriber subscriber : accountSubscribers) {
+            if (!subscriber.offer(accountId, balance)) {
+                conflatedBalances.increment();
+            }
+            schedule(subscriber);
+        }
+    }
+
+    private void sendCurrentBalances(BalanceSubscriber subscriber) {
+        for (String accountId : subscriber.getAccountIds()) {
+            Account account = accountsRepository.getAccount(accountId);
+            if (account != null) {
+                subscriber.offer(accountId, account.getBalance());
+            }
+        }
+        schedule(subscriber);
+    }
+
+    /**
+     * Idle connections get a comment now and then, so the clients which went away are noticed
+     */
+    private void requestHeartbeats(long now) {
+        for (BalanceSubscriber subscriber : subscribers) {
+            if (now - subscriber.getLastSentAt() >= heartbeatMillis) {
+                subscriber.requestHeartbeat();
+                schedule(subscriber);
+            }
+        }
+    }
+
+    private void schedule(BalanceSubscriber subscriber) {
+        if (subscriber.schedule()) {
+            senders.execute(() -> send(subscriber));
+        }
+    }
+
+    private void send(BalanceSubscriber subscriber) {
+        try {
+            sentBalances.add(subscriber.send());
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Subscriber went away: {}", e.getMessage());
+            unsubscribe(subscriber);
+            subscriber.getEmitter().complete();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.streaming;
+
+import com.db.awmd.challenge.domain.Account;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A client of the balance stream. Balances which were not sent yet are kept per account, a newer balance
+ * replaces the older one, so a slow client gets the latest balances instead of a growing backlog.
+ */
+class BalanceSubscriber {
+
+    private final Set<String> accountIds;
+
+    private final SseEmitter emitter;
+
+    private final Map<String, BigDecimal> pendingBalances = new ConcurrentHashMap<>();
+
+    /**
+     * True while the subscriber waits for its sender thread or is being sent to
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile boolean heartbeatDue;
+
+    private volatile long lastSentAt = System.currentTimeMillis();
+
+    BalanceSubscriber(Set<String> accountIds, SseEmitter emitter) {
+        this.accountIds = accountIds;
+        this.emitter = emitter;
+    }
+
+    Set<String> getAccountIds() {
+        return accountIds;
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    long getLastSentAt() {
+        return lastSentAt;
+    }
+
+    /**
+     * @return false if an older balance of the account was replaced (conflated)
+     */
+    boolean offer(String accountId, BigDecimal balance) {
+        return pendingBalances.put(accountId, balance) == null;
+    }
+
+    void requestHeartbeat() {
+        heartbeatDue = true;
+    }
+
+    /**
+     * @return true if the caller has to start a sender thread of the subscriber
+     */
+    boolean schedule() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Send the pending balances. The flag is cleared only after they were sent and the subscriber is sent to
+     * again if a balance was offered meanwhile, so there is at most one sender of the subscriber at a time.
+     *
+     * @return number of sent balances
+     */
+    int send() throws IOException {
+        int sent = 0;
+        do {
+            boolean heartbeat = heartbeatDue;
+            heartbeatDue = false;
+            int drained = 0;
+            for (String accountId : pendingBalances.keySet()) {
+                BigDecimal balance = pendingBalances.remove(accountId);
+                if (balance != null) {
+                    emitter.send(SseEmitter.event().name("balance").data(new Account(accountId, balance)));
+                    drained++;
+                }
+            }
+            if (drained == 0 && heartbeat) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+            sent += drained;
+            lastSentAt = System.currentTimeMillis();
+            scheduled.set(false);
+        } while ((!pendingBalances.isEmpty() || heartbeatDue) && scheduled.compareAndSet(false, true));
+        return sent;
+    }
+}
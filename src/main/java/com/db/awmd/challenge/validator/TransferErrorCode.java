@@ -14,5 +14,7 @@ public enum TransferErrorCode {
     TRANSFER_TO_THE_SAME_ACCOUNT,
 
     AMOUNT_TO_TRANSFER_IS_NULL,
-    AMOUNT_TO_TRANSFER_IS_NEGATIVE_OR_ZERO;
+    AMOUNT_TO_TRANSFER_IS_NEGATIVE_OR_ZERO,
+
+    VELOCITY_LIMIT_EXCEEDED;
 }
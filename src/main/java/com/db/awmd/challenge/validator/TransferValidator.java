@@ -3,6 +3,7 @@ package com.db.awmd.challenge.validator;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.Transfer;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.velocity.VelocityLimiter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
@@ -22,6 +23,8 @@ public class TransferValidator implements Validator {
     @Autowired
     private AccountsRepository accountsRepository;
 
+    @Autowired
+    private VelocityLimiter velocityLimiter;
 
     @Override
     public boolean supports(Class<?> clazz) {
@@ -52,6 +55,11 @@ public class TransferValidator implements Validator {
             errors.rejectValue("accountFromId", ACCOUNT_FROM_ID_DO_NOT_HAVE_ENOUGH_MONEY.name());
         }
 
+        if (!velocityLimiter.isWithinLimits(accountsRepository.getAccount(transfer.getAccountFromId()),
+                transfer.getAmountToTransfer())) {
+            errors.rejectValue("accountFromId", VELOCITY_LIMIT_EXCEEDED.name());
+        }
+
         if (accountsRepository.getAccount(transfer.getAccountToId()) == null) {
             errors.rejectValue("accountToId", ACCOUNT_TO_ID_NOT_FOUND.name());
             return false;
@@ -0,0 +1,309 @@
+package com.db.awmd.challenge.velocity;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Outgoing transfer counts and amounts of the accounts over a sliding minute and a sliding day.
+ * <p>
+ * Every window is a ring of time buckets with a running total, so a check costs the same however many transfers
+ * an account made. The accounts are spread over segments, each one an open addressing table backed by primitive
+ * arrays and guarded by its own lock. An account whose day window has expired is dropped when its segment is
+ * rebuilt, so the memory follows the accounts which were active during the last day (12 bytes per bucket of
+ * a table slot, the table is kept at most three quarters full).
+ */
+public class VelocityCounters {
+
+    static final long MINUTE_MILLIS = 60_000L;
+    static final long DAY_MILLIS = 86_400_000L;
+
+    private static final int MINUTE = 0;
+    private static final int DAY = 1;
+    private static final int WINDOWS = 2;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int[] windowBuckets;
+
+    private final long[] bucketMillis;
+
+    private final int[] ringOffsets;
+
+    private final int ringLength;
+
+    private final Segment[] segments;
+
+    /**
+     * @param minuteBuckets buckets of the minute window, more buckets make the window slide more smoothly
+     * @param dayBuckets    buckets of the day window
+     * @param segments      number of independently locked segments, a power of two
+     */
+    public VelocityCounters(int minuteBuckets, int dayBuckets, int segments) {
+        if (Integer.bitCount(segments) != 1) {
+            throw new IllegalArgumentException("Number of segments must be a power of two: " + segments);
+        }
+        this.windowBuckets = new int[]{minuteBuckets, dayBuckets};
+        this.bucketMillis = new long[]{MINUTE_MILLIS / minuteBuckets, DAY_MILLIS / dayBuckets};
+        this.ringOffsets = new int[]{0, minuteBuckets};
+        this.ringLength = minuteBuckets + dayBuckets;
+        this.segments = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new Segment(INITIAL_CAPACITY);
+        }
+    }
+
+    /**
+     * @return true if one more transfer of the amount stays within the limits
+     */
+    public boolean isWithinLimits(String accountId, VelocityLimits limits, long amountCents, long now) {
+        Segment segment = segmentOf(accountId);
+        segment.lock();
+        try {
+            int slot = segment.find(accountId);
+            return isWithinLimits(segment, slot, limits, amountCents, now);
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    public void record(String accountId, long amountCents, long now) {
+        Segment segment = segmentOf(accountId);
+        segment.lock();
+        try {
+            record(segment, segment.findOrInsert(accountId, now), amountCents, now);
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * Record the transfer if it stays within the limits, as one atomic step
+     *
+     * @return false if the transfer was not recorded because it would exceed a limit
+     */
+    public boolean tryRecord(String accountId, VelocityLimits limits, long amountCents, long now) {
+        Segment segment = segmentOf(accountId);
+        segment.lock();
+        try {
+            if (!isWithinLimits(segment, segment.find(accountId), limits, amountCents, now)) {
+                return false;
+            }
+            record(segment, segment.findOrInsert(accountId, now), amountCents, now);
+            return true;
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * @return counts and amounts in cents of the account: minute count, minute amount, day count, day amount
+     */
+    public long[] getUsage(String accountId, long now) {
+        Segment segment = segmentOf(accountId);
+        segment.lock();
+        try {
+            int slot = segment.find(accountId);
+            if (slot < 0) {
+                return new long[4];
+            }
+            advance(segment, slot, now);
+            return new long[]{
+                    segment.totalCounts[slot * WINDOWS + MINUTE], segment.totalAmounts[slot * WINDOWS + MINUTE],
+                    segment.totalCounts[slot * WINDOWS + DAY], segment.totalAmounts[slot * WINDOWS + DAY]};
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    /**
+     * @return number of accounts in the table, including the expired ones which were not dropped yet
+     */
+    public int getTrackedAccounts() {
+        int trackedAccounts = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                trackedAccounts += segment.size;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return trackedAccounts;
+    }
+
+    private boolean isWithinLimits(Segment segment, int slot, VelocityLimits limits, long amountCents, long now) {
+        long minuteCount = 0;
+        long minuteAmount = 0;
+        long dayCount = 0;
+        long dayAmount = 0;
+        if (slot >= 0) {
+            advance(segment, slot, now);
+            minuteCount = segment.totalCounts[slot * WINDOWS + MINUTE];
+            minuteAmount = segment.totalAmounts[slot * WINDOWS + MINUTE];
+            dayCount = segment.totalCounts[slot * WINDOWS + DAY];
+            dayAmount = segment.totalAmounts[slot * WINDOWS + DAY];
+        }
+        return minuteCount < limits.getMaxCountPerMinute()
+                && amountCents <= limits.getMaxAmountPerMinute() - minuteAmount
+                && dayCount < limits.getMaxCountPerDay()
+                && amountCents <= limits.getMaxAmountPerDay() - dayAmount;
+    }
+
+    private void record(Segment segment, int slot, long amountCents, long now) {
+        advance(segment, slot, now);
+        for (int window = 0; window < WINDOWS; window++) {
+            int bucket = slot * ringLength + ringOffsets[window]
+                    + (int) (segment.lastBuckets[slot * WINDOWS + window] % windowBuckets[window]);
+            segment.bucketCounts[bucket]++;
+            segment.bucketAmounts[bucket] += amountCents;
+            segment.totalCounts[slot * WINDOWS + window]++;
+            segment.totalAmounts[slot * WINDOWS + window] += amountCents;
+        }
+    }
+
+    /**
+     * Move the windows of the account to the current bucket, the buckets which fell out are subtracted
+     */
+    private void advance(Segment segment, int slot, long now) {
+        for (int window = 0; window < WINDOWS; window++) {
+            int total = slot * WINDOWS + window;
+            long currentBucket = now / bucketMillis[window];
+            long lastBucket = segment.lastBuckets[total];
+            if (currentBucket <= lastBucket) {
+                continue;
+            }
+            int ring = slot * ringLength + ringOffsets[window];
+            int buckets = windowBuckets[window];
+            if (currentBucket - lastBucket >= buckets) {
+                Arrays.fill(segment.bucketCounts, ring, ring + buckets, 0);
+                Arrays.fill(segment.bucketAmounts, ring, ring + buckets, 0L);
+                segment.totalCounts[total] = 0;
+                segment.totalAmounts[total] = 0;
+            } else {
+                for (long expired = lastBucket + 1; expired <= currentBucket; expired++) {
+                    int bucket = ring + (int) (expired % buckets);
+                    segment.totalCounts[total] -= segment.bucketCounts[bucket];
+                    segment.totalAmounts[total] -= segment.bucketAmounts[bucket];
+                    segment.bucketCounts[bucket] = 0;
+                    segment.bucketAmounts[bucket] = 0;
+                }
+            }
+            segment.lastBuckets[total] = currentBucket;
+        }
+    }
+
+    private Segment segmentOf(String accountId) {
+        return segments[spread(accountId.hashCode()) & (segments.length - 1)];
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private final class Segment extends ReentrantLock {
+
+        private String[] accountIds;
+
+        private int[] bucketCounts;
+
+        private long[] bucketAmounts;
+
+        private long[] totalCounts;
+
+        private long[] totalAmounts;
+
+        private long[] lastBuckets;
+
+        private int size;
+
+        private Segment(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            accountIds = new String[capacity];
+            bucketCounts = new int[capacity * ringLength];
+            bucketAmounts = new long[capacity * ringLength];
+            totalCounts = new long[capacity * WINDOWS];
+            totalAmounts = new long[capacity * WINDOWS];
+            lastBuckets = new long[capacity * WINDOWS];
+            size = 0;
+        }
+
+        private int find(String accountId) {
+            int mask = accountIds.length - 1;
+            for (int slot = (spread(accountId.hashCode()) >>> 8) & mask; accountIds[slot] != null;
+                 slot = (slot + 1) & mask) {
+                if (accountIds[slot].equals(accountId)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int findOrInsert(String accountId, long now) {
+            int slot = find(accountId);
+            if (slot >= 0) {
+                return slot;
+            }
+            if ((size + 1) * 4 > accountIds.length * 3) {
+                rebuild(now);
+            }
+            return insert(accountId, now);
+        }
+
+        private int insert(String accountId, long now) {
+            int mask = accountIds.length - 1;
+            int slot = (spread(accountId.hashCode()) >>> 8) & mask;
+            while (accountIds[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            accountIds[slot] = accountId;
+            for (int window = 0; window < WINDOWS; window++) {
+                lastBuckets[slot * WINDOWS + window] = now / bucketMillis[window];
+            }
+            size++;
+            return slot;
+        }
+
+        /**
+         * Drop the accounts without a transfer during the last day and size the table for the rest
+         */
+        private void rebuild(long now) {
+            long currentDayBucket = now / bucketMillis[DAY];
+            int live = 0;
+            for (int slot = 0; slot < accountIds.length; slot++) {
+                if (accountIds[slot] != null && !isExpired(slot, currentDayBucket)) {
+                    live++;
+                }
+            }
+            int capacity = INITIAL_CAPACITY;
+            while (capacity * 3 < (live + 1) * 8) {
+                capacity <<= 1;
+            }
+
+            String[] oldAccountIds = accountIds;
+            int[] oldBucketCounts = bucketCounts;
+            long[] oldBucketAmounts = bucketAmounts;
+            long[] oldTotalCounts = totalCounts;
+            long[] oldTotalAmounts = totalAmounts;
+            long[] oldLastBuckets = lastBuckets;
+            allocate(capacity);
+            for (int oldSlot = 0; oldSlot < oldAccountIds.length; oldSlot++) {
+                if (oldAccountIds[oldSlot] == null || currentDayBucket - oldLastBuckets[oldSlot * WINDOWS + DAY]
+                        >= windowBuckets[DAY]) {
+                    continue;
+                }
+                int slot = insert(oldAccountIds[oldSlot], now);
+                System.arraycopy(oldBucketCounts, oldSlot * ringLength, bucketCounts, slot * ringLength, ringLength);
+                System.arraycopy(oldBucketAmounts, oldSlot * ringLength, bucketAmounts, slot * ringLength, ringLength);
+                System.arraycopy(oldTotalCounts, oldSlot * WINDOWS, totalCounts, slot * WINDOWS, WINDOWS);
+                System.arraycopy(oldTotalAmounts, oldSlot * WINDOWS, totalAmounts, slot * WINDOWS, WINDOWS);
+                System.arraycopy(oldLastBuckets, oldSlot * WINDOWS, lastBuckets, slot * WINDOWS, WINDOWS);
+            }
+        }
+
+        private boolean isExpired(int slot, long currentDayBucket) {
+            return currentDayBucket - lastBuckets[slot * WINDOWS + DAY] >= windowBuckets[DAY];
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.db.awmd.challenge.velocity;
+
+import com.db.awmd.challenge.domain.Account;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies the velocity limits of the account tier to the outgoing transfers.
+ * The check and the record of a transfer are exact as long as both are done under the lock of the account
+ * the money goes from, which is where the transfers do them.
+ */
+@Component
+public class VelocityLimiter {
+
+    private final VelocityProperties properties;
+
+    private final VelocityCounters counters;
+
+    private final Map<String, VelocityLimits> tierLimits = new HashMap<>();
+
+    @Autowired
+    public VelocityLimiter(VelocityProperties properties) {
+        this.properties = properties;
+        this.counters = new VelocityCounters(properties.getMinuteBuckets(), properties.getDayBuckets(),
+                properties.getSegments());
+        properties.getTiers().forEach((tier, limits) -> tierLimits.put(tier, new VelocityLimits(
+                limitOf(limits.getMaxCountPerMinute()), toCents(limits.getMaxAmountPerMinute()),
+                limitOf(limits.getMaxCountPerDay()), toCents(limits.getMaxAmountPerDay()))));
+    }
+
+    /**
+     * @return true if the transfer of the amount from the account stays within the limits of its tier,
+     * an amount which is too large to be counted exceeds every limited tier
+     */
+    public boolean isWithinLimits(Account accountFrom, BigDecimal amount) {
+        VelocityLimits limits = limitsOf(accountFrom);
+        long amountCents = toCents(amount);
+        return limits.isUnlimited() || amountCents < Long.MAX_VALUE && counters.isWithinLimits(
+                accountFrom.getAccountId(), limits, amountCents, System.currentTimeMillis());
+    }
+
+    /**
+     * Record a transfer which was made
+     */
+    public void record(Account accountFrom, BigDecimal amount) {
+        if (!limitsOf(accountFrom).isUnlimited()) {
+            counters.record(accountFrom.getAccountId(), toCents(amount), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Check and record the transfer in one step
+     *
+     * @return false if the transfer would exceed the limits, it was not recorded then
+     */
+    public boolean tryRecord(Account accountFrom, BigDecimal amount) {
+        VelocityLimits limits = limitsOf(accountFrom);
+        long amountCents = toCents(amount);
+        return limits.isUnlimited() || amountCents < Long.MAX_VALUE && counters.tryRecord(
+                accountFrom.getAccountId(), limits, amountCents, System.currentTimeMillis());
+    }
+
+    /**
+     * @return true if the tier is the default tier or its limits are configured, null is the default tier
+     */
+    public boolean isKnownTier(String tier) {
+        return tier == null || tier.equals(properties.getDefaultTier()) || tierLimits.containsKey(tier);
+    }
+
+    public int getTrackedAccounts() {
+        return counters.getTrackedAccounts();
+    }
+
+    private VelocityLimits limitsOf(Account account) {
+        if (!properties.isEnabled()) {
+            return VelocityLimits.NONE;
+        }
+        VelocityLimits limits = account.getTier() == null ? null : tierLimits.get(account.getTier());
+        // an unknown tier (which can not be created, but e.g. was removed from the configuration) is not unlimited
+        return limits != null ? limits : tierLimits.getOrDefault(properties.getDefaultTier(), VelocityLimits.NONE);
+    }
+
+    private static long limitOf(Long limit) {
+        return limit == null ? Long.MAX_VALUE : limit;
+    }
+
+    /**
+     * @return the amount in cents, Long.MAX_VALUE if it is null or too large to be counted
+     */
+    private static long toCents(BigDecimal amount) {
+        if (amount == null) {
+            return Long.MAX_VALUE;
+        }
+        BigInteger cents = amount.movePointRight(2).setScale(0, RoundingMode.UP).toBigIntegerExact();
+        return cents.bitLength() < Long.SIZE ? cents.longValue() : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.velocity;
+
+import lombok.Data;
+
+/**
+ * Limits of the outgoing transfers of an account, amounts in cents. {@link Long#MAX_VALUE} means no limit.
+ */
+@Data
+public class VelocityLimits {
+
+    public static final VelocityLimits NONE = new VelocityLimits(Long.MAX_VALUE, Long.MAX_VALUE,
+            Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long maxCountPerMinute;
+
+    private final long maxAmountPerMinute;
+
+    private final long maxCountPerDay;
+
+    private final long maxAmountPerDay;
+
+    public boolean isUnlimited() {
+        return this.equals(NONE);
+    }
+}
@@ -0,0 +1,43 @@
+package com.db.awmd.challenge.velocity;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Velocity limits of the outgoing transfers per account tier. Accounts without a tier use the default tier,
+ * a tier without limits costs nothing on the transfer path.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "velocity")
+public class VelocityProperties {
+
+    private boolean enabled = true;
+
+    private String defaultTier = "standard";
+
+    private int minuteBuckets = 12;
+
+    private int dayBuckets = 24;
+
+    private int segments = 64;
+
+    private Map<String, Tier> tiers = new HashMap<>();
+
+    @Data
+    public static class Tier {
+
+        private Long maxCountPerMinute;
+
+        private BigDecimal maxAmountPerMinute;
+
+        private Long maxCountPerDay;
+
+        private BigDecimal maxAmountPerDay;
+    }
+}
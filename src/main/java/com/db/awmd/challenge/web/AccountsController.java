@@ -1,19 +1,29 @@
 package com.db.awmd.challenge.web;
 
+import com.db.awmd.challenge.cluster.ClusterTransferService;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.ReadOnlyReplicaException;
 import com.db.awmd.challenge.exception.TransferException;
+import com.db.awmd.challenge.replication.ReplicationService;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransferConcurrencyLimiter;
+import com.db.awmd.challenge.service.TransferNettingService;
+import jakarta.validation.Valid;
+import jakarta.validation.ValidationException;
+import jakarta.validation.constraints.NotNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import javax.validation.Valid;
-import javax.validation.ValidationException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/v1/accounts")
@@ -22,9 +32,24 @@ public class AccountsController {
 
     private final AccountsService accountsService;
 
+    private final TransferNettingService transferNettingService;
+
+    private final TransferConcurrencyLimiter transferConcurrencyLimiter;
+
+    private final ClusterTransferService clusterTransferService;
+
+    private final ReplicationService replicationService;
+
     @Autowired
-    public AccountsController(AccountsService accountsService) {
+    public AccountsController(AccountsService accountsService, TransferNettingService transferNettingService,
+                              TransferConcurrencyLimiter transferConcurrencyLimiter,
+                              ClusterTransferService clusterTransferService,
+                              ReplicationService replicationService) {
         this.accountsService = accountsService;
+        this.transferNettingService = transferNettingService;
+        this.transferConcurrencyLimiter = transferConcurrencyLimiter;
+        this.clusterTransferService = clusterTransferService;
+        this.replicationService = replicationService;
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -32,33 +57,85 @@ public class AccountsController {
         log.info("Creating account {}", account);
 
         try {
-            this.accountsService.createAccount(account);
-        } catch (DuplicateAccountIdException daie) {
-            return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+            if (clusterTransferService.isEnabled()) {
+                this.clusterTransferService.createAccount(account);
+            } else {
+                this.accountsService.createAccount(account);
+            }
+        } catch (DuplicateAccountIdException | ValidationException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (ReadOnlyReplicaException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
         }
 
         return new ResponseEntity<>(HttpStatus.CREATED);
     }
 
     @GetMapping(path = "/{accountId}")
-    public Account getAccount(@PathVariable String accountId) {
+    public ResponseEntity<?> getAccount(@PathVariable String accountId) {
         log.info("Retrieving account for id {}", accountId);
-        return this.accountsService.getAccount(accountId);
+        if (replicationService.isStale()) {
+            return new ResponseEntity<>("Replica is behind the primary by " + replicationService.getLagMillis() + " ms",
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        Account account = clusterTransferService.isEnabled()
+                ? this.clusterTransferService.getAccount(accountId)
+                : this.accountsService.getAccount(accountId);
+        return new ResponseEntity<>(account, HttpStatus.OK);
     }
 
     @PutMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> transfer(@RequestBody @Valid Transfer transfer) {
         log.info("transfer(Transfer transfer) called with: accountFromId = [" + transfer.getAccountFromId() + "], accountToId = [" + transfer.getAccountToId() + "]," +
                 " amountToTransfer = [" + transfer.getAmountToTransfer() + "]");
+        if (!transferConcurrencyLimiter.tryAcquire()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(transferConcurrencyLimiter.getRetryAfterSeconds()))
+                    .body("Too many transfers in progress");
+        }
+        long startNanos = System.nanoTime();
+        boolean dropped = false;
         try {
-            this.accountsService.transfer(transfer.getAccountFromId(), transfer.getAccountToId(),
-                    transfer.getAmountToTransfer());
+            if (clusterTransferService.isEnabled()) {
+                this.clusterTransferService.transfer(transfer.getAccountFromId(), transfer.getAccountToId(),
+                        transfer.getAmountToTransfer());
+            } else {
+                this.accountsService.transfer(transfer.getAccountFromId(), transfer.getAccountToId(),
+                        transfer.getAmountToTransfer());
+            }
+        } catch (ReadOnlyReplicaException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
         } catch (TransferException e) {
+            dropped = true;
             return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         } catch (ValidationException e) {
             return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } finally {
+            transferConcurrencyLimiter.release(System.nanoTime() - startNanos, dropped);
         }
         return new ResponseEntity(HttpStatus.OK);
     }
 
+    @PutMapping(path = "/transfer/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> transferBatch(@RequestBody List<@NotNull Transfer> transfers) {
+        log.info("transferBatch(List<Transfer> transfers) called with {} transfers", transfers.size());
+        if (transfers.size() > this.transferNettingService.getBatchSize()) {
+            return new ResponseEntity<>("Batch can not have more than " + this.transferNettingService.getBatchSize()
+                    + " transfers", HttpStatus.BAD_REQUEST);
+        }
+        try {
+            return new ResponseEntity<>(this.accountsService.transferNetted(transfers), HttpStatus.OK);
+        } catch (TransferException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @PutMapping(path = "/transfer/netted", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<?>> transferNetted(@RequestBody @Valid Transfer transfer) {
+        log.info("transferNetted(Transfer transfer) called with: " + transfer);
+        return this.transferNettingService.submit(transfer).handle((TransferOutcome outcome, Throwable e) -> e == null
+                ? new ResponseEntity<>(outcome, HttpStatus.OK)
+                : new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR));
+    }
+
 }
@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.AccountContention;
+import com.db.awmd.challenge.profiler.LockContentionProfiler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/v1/admin")
+@Slf4j
+public class AdminController {
+
+    private final LockContentionProfiler lockContentionProfiler;
+
+    @Autowired
+    public AdminController(LockContentionProfiler lockContentionProfiler) {
+        this.lockContentionProfiler = lockContentionProfiler;
+    }
+
+    @GetMapping(path = "/contention")
+    public List<AccountContention> getTopContended(@RequestParam(defaultValue = "10") int top,
+                                                   @RequestParam(defaultValue = "6") int windows) {
+        log.info("Retrieving top {} contended accounts of the last {} windows", top, windows);
+        return this.lockContentionProfiler.getTopContended(
+                Math.min(Math.max(top, 0), lockContentionProfiler.getCapacity()),
+                Math.min(Math.max(windows, 1), lockContentionProfiler.getWindows()));
+    }
+}
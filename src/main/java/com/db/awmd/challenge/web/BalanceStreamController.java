@@ -0,0 +1,46 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.StreamStatistics;
+import com.db.awmd.challenge.exception.SubscriptionLimitException;
+import com.db.awmd.challenge.streaming.BalanceStreamService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/v1/accounts/stream")
+@Slf4j
+public class BalanceStreamController {
+
+    private final BalanceStreamService balanceStreamService;
+
+    @Autowired
+    public BalanceStreamController(BalanceStreamService balanceStreamService) {
+        this.balanceStreamService = balanceStreamService;
+    }
+
+    /**
+     * Stream the balances of the accounts, e.g. {@code GET /v1/accounts/stream?accountIds=Id-1,Id-2}
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribe(@RequestParam List<String> accountIds) {
+        log.info("Subscribing to the balances of {}", accountIds);
+        try {
+            return new ResponseEntity<>(this.balanceStreamService.subscribe(accountIds), HttpStatus.OK);
+        } catch (SubscriptionLimitException e) {
+            log.warn(e.getMessage());
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    @GetMapping(path = "/statistics")
+    public StreamStatistics getStatistics() {
+        return this.balanceStreamService.getStatistics();
+    }
+}
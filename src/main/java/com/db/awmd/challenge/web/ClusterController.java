@@ -0,0 +1,69 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.cluster.ClusterTransferService;
+import com.db.awmd.challenge.cluster.ReservationService;
+import com.db.awmd.challenge.cluster.TransferDecision;
+import com.db.awmd.challenge.domain.Reservation;
+import com.db.awmd.challenge.exception.TransferException;
+import jakarta.validation.ValidationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Endpoints which are called by the other cluster nodes, they are only mapped in the cluster mode
+ */
+@RestController
+@ConditionalOnProperty(prefix = "cluster", name = "enabled", havingValue = "true")
+@RequestMapping("/v1/cluster")
+@Slf4j
+public class ClusterController {
+
+    private final ReservationService reservationService;
+
+    private final ClusterTransferService clusterTransferService;
+
+    @Autowired
+    public ClusterController(ReservationService reservationService, ClusterTransferService clusterTransferService) {
+        this.reservationService = reservationService;
+        this.clusterTransferService = clusterTransferService;
+    }
+
+    @PutMapping(path = "/reservations", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> reserve(@RequestBody Reservation reservation) {
+        log.info("Reserving {}", reservation);
+        return settle(() -> this.reservationService.reserve(reservation));
+    }
+
+    @PutMapping(path = "/reservations/{transferId}/commit")
+    public ResponseEntity<?> commit(@PathVariable String transferId) {
+        log.info("Committing transfer {}", transferId);
+        return settle(() -> this.reservationService.commit(transferId));
+    }
+
+    @PutMapping(path = "/reservations/{transferId}/abort")
+    public ResponseEntity<?> abort(@PathVariable String transferId) {
+        log.info("Aborting transfer {}", transferId);
+        return settle(() -> this.reservationService.abort(transferId));
+    }
+
+    @GetMapping(path = "/decisions/{transferId}")
+    public TransferDecision getDecision(@PathVariable String transferId) {
+        return this.clusterTransferService.getDecision(transferId);
+    }
+
+    private ResponseEntity<?> settle(Runnable action) {
+        try {
+            action.run();
+        } catch (TransferException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (ValidationException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity(HttpStatus.OK);
+    }
+}
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.ReplicationBatch;
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.exception.ReplicationException;
+import com.db.awmd.challenge.replication.ReplicationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/v1/replication")
+@Slf4j
+public class ReplicationController {
+
+    private final ReplicationService replicationService;
+
+    @Autowired
+    public ReplicationController(ReplicationService replicationService) {
+        this.replicationService = replicationService;
+    }
+
+    /**
+     * Called by the primary
+     */
+    @PutMapping(path = "/batches", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> apply(@RequestBody ReplicationBatch batch) {
+        log.debug("Applying {} changes", batch.getChanges().size());
+        try {
+            return new ResponseEntity<>(this.replicationService.apply(batch), HttpStatus.OK);
+        } catch (ReplicationException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+        }
+    }
+
+    @GetMapping(path = "/status")
+    public ReplicationStatus getStatus() {
+        return this.replicationService.getStatus();
+    }
+
+    @PostMapping(path = "/promote")
+    public ResponseEntity<?> promote() {
+        log.info("Promoting the node to primary");
+        try {
+            this.replicationService.promote();
+        } catch (ReplicationException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+        }
+        return new ResponseEntity<>(this.replicationService.getStatus(), HttpStatus.OK);
+    }
+}
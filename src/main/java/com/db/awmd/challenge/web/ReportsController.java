@@ -0,0 +1,45 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceHistogramBucket;
+import com.db.awmd.challenge.domain.BalanceSummary;
+import com.db.awmd.challenge.reporting.BalanceReadModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/v1/reports")
+@Slf4j
+public class ReportsController {
+
+    private final BalanceReadModel balanceReadModel;
+
+    private final int maxTopAccounts;
+
+    @Autowired
+    public ReportsController(BalanceReadModel balanceReadModel,
+                             @Value("${reporting.max-top-accounts:1000}") int maxTopAccounts) {
+        this.balanceReadModel = balanceReadModel;
+        this.maxTopAccounts = maxTopAccounts;
+    }
+
+    @GetMapping(path = "/summary")
+    public BalanceSummary getSummary() {
+        return this.balanceReadModel.getSummary();
+    }
+
+    @GetMapping(path = "/histogram")
+    public List<BalanceHistogramBucket> getHistogram() {
+        return this.balanceReadModel.getHistogram();
+    }
+
+    @GetMapping(path = "/top-accounts")
+    public List<Account> getTopAccounts(@RequestParam(defaultValue = "10") int limit) {
+        log.info("Retrieving top {} accounts by balance", limit);
+        return this.balanceReadModel.getTopAccounts(Math.min(Math.max(limit, 0), maxTopAccounts));
+    }
+}
@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.exception.ReadOnlyReplicaException;
+import com.db.awmd.challenge.service.ScheduledTransferService;
+import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/v1/accounts/transfer/scheduled")
+@Slf4j
+public class ScheduledTransfersController {
+
+    private final ScheduledTransferService scheduledTransferService;
+
+    @Autowired
+    public ScheduledTransfersController(ScheduledTransferService scheduledTransferService) {
+        this.scheduledTransferService = scheduledTransferService;
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> schedule(@RequestBody @Valid ScheduledTransfer scheduledTransfer) {
+        log.info("Scheduling transfer {}", scheduledTransfer);
+        try {
+            return new ResponseEntity<>(this.scheduledTransferService.schedule(scheduledTransfer), HttpStatus.CREATED);
+        } catch (ReadOnlyReplicaException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    @GetMapping(path = "/{id}")
+    public ResponseEntity<ScheduledTransfer> getScheduledTransfer(@PathVariable String id) {
+        ScheduledTransfer scheduledTransfer = this.scheduledTransferService.getScheduledTransfer(id);
+        return scheduledTransfer == null
+                ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
+                : new ResponseEntity<>(scheduledTransfer, HttpStatus.OK);
+    }
+
+    @DeleteMapping(path = "/{id}")
+    public ResponseEntity<?> cancel(@PathVariable String id) {
+        log.info("Cancelling scheduled transfer {}", id);
+        return new ResponseEntity<>(this.scheduledTransferService.cancel(id) ? HttpStatus.OK : HttpStatus.NOT_FOUND);
+    }
+}
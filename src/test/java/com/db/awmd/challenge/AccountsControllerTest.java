@@ -1,6 +1,7 @@
 package com.db.awmd.challenge;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.profiler.LockContentionProfiler;
 import com.db.awmd.challenge.service.AccountsService;
 import org.junit.Before;
 import org.junit.Test;
@@ -16,8 +17,10 @@ import org.springframework.test.web.servlet.ResultMatcher;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -33,6 +36,9 @@ public class AccountsControllerTest {
     @Autowired
     private AccountsService accountsService;
 
+    @Autowired
+    private LockContentionProfiler lockContentionProfiler;
+
     @Autowired
     private WebApplicationContext webApplicationContext;
 
@@ -135,6 +141,68 @@ public class AccountsControllerTest {
                     .content("{\"accountId\":\"" + ID_2 + "\",\"balance\":1000}")).andExpect(status().isCreated());
     }
 
+    @Test
+    public void getReports() throws Exception {
+        this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"accountFromId\":\"" + ID_1 + "\",\"accountToId\":\"" + ID_2
+                        + "\",\"amountToTransfer\":1000}")).andExpect(status().isOk());
+
+        this.mockMvc.perform(get("/v1/reports/summary")).andExpect(status().isOk()).andExpect(content().string(
+                "{\"totalBalance\":2000.00,\"accounts\":2,\"negativeBalances\":0,\"zeroBalances\":1}"));
+        this.mockMvc.perform(get("/v1/reports/top-accounts?limit=1")).andExpect(status().isOk())
+                .andExpect(content().string("[{\"accountId\":\"" + ID_2 + "\",\"balance\":2000}]"));
+    }
+
+    @Test
+    public void getTopContendedAccounts() throws Exception {
+        lockContentionProfiler.record("Id-contended", 5_000_000_000L, true);
+
+        this.mockMvc.perform(get("/v1/admin/contention?top=1")).andExpect(status().isOk())
+                .andExpect(content().string("[{\"accountId\":\"Id-contended\",\"waitNanos\":5000000000,"
+                        + "\"errorNanos\":0,\"contendedCount\":1,\"timeoutCount\":1}]"));
+    }
+
+    @Test
+    public void getTopContendedAccountsClampsTheParameters() throws Exception {
+        lockContentionProfiler.record("Id-clamped", 1_000_000L, false);
+
+        this.mockMvc.perform(get("/v1/admin/contention?top=-1")).andExpect(status().isOk())
+                .andExpect(content().string("[]"));
+        this.mockMvc.perform(get("/v1/admin/contention?top=2147483647&windows=-1")).andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"accountId\":\"Id-clamped\"")));
+        this.mockMvc.perform(get("/v1/admin/contention?windows=2147483647")).andExpect(status().isOk());
+    }
+
+    @Test
+    public void clusterEndpointsAreNotMappedWithoutCluster() throws Exception {
+        this.mockMvc.perform(get("/v1/cluster/decisions/t-1")).andExpect(status().isNotFound());
+        this.mockMvc.perform(put("/v1/cluster/reservations").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"transferId\":\"t-1\",\"accountId\":\"" + ID_1
+                        + "\",\"amount\":10,\"direction\":\"DEBIT\",\"coordinatorNodeId\":\"node-1\"}"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void transferBatchWithNullTransferIsRejected() throws Exception {
+        this.mockMvc.perform(put("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"accountFromId\":\"" + ID_1 + "\",\"accountToId\":\"" + ID_2
+                        + "\",\"amountToTransfer\":10},null]")).andExpect(status().isBadRequest());
+
+        assertThat(accountsService.getAccount(ID_1).getBalance()).isEqualByComparingTo("1000");
+    }
+
+    @Test
+    public void transferBatchOverBatchSizeIsRejected() throws Exception {
+        String transfer = "{\"accountFromId\":\"" + ID_1 + "\",\"accountToId\":\"" + ID_2
+                + "\",\"amountToTransfer\":1}";
+        this.mockMvc.perform(put("/v1/accounts/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("[" + String.join(",", Collections.nCopies(1001, transfer)) + "]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Batch can not have more than 1000 transfers"));
+
+        assertThat(accountsService.getAccount(ID_1).getBalance()).isEqualByComparingTo("1000");
+    }
+
     @Test
     public void transferBetweenAccountsZeroValue() throws Exception {
         ResultActions resultActions =  getTransferStatus(0);
@@ -1,9 +1,15 @@
 package com.db.awmd.challenge;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.service.AccountsService;
 import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.ScheduledTransferService;
+import com.db.awmd.challenge.service.TransferNettingService;
+import jakarta.validation.ValidationException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
@@ -11,7 +17,6 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 import org.mockito.Mockito;
-import org.omg.CORBA.Any;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Scope;
@@ -19,15 +24,18 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
-import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ActiveProfiles("integration_tests")
 @RunWith(SpringRunner.class)
@@ -42,11 +50,17 @@ public class AccountsServiceTest {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private TransferNettingService transferNettingService;
+
+    @Autowired
+    private ScheduledTransferService scheduledTransferService;
+
     @Before
     public void before() throws Exception {
         createStandardAccountPair();
-        //It is just "reset button" of the mock class
-        verify(notificationService, Mockito.atLeast(0)).notifyAboutTransfer(any(Account.class), any(String.class));
+        //The mock is shared by the tests of the context, so the notifications of the previous tests are forgotten
+        Mockito.clearInvocations(notificationService);
     }
 
     @After
@@ -131,7 +145,7 @@ public class AccountsServiceTest {
     }
 
 
-    @Test(expected = javax.validation.ValidationException.class)
+    @Test(expected = jakarta.validation.ValidationException.class)
     public void tryTransferBetweenAccountsMoreThanFirstAccountHave() {
         this.accountsService.transfer(ACC_ID_1, ACC_ID_2, BigDecimal.valueOf(100L));
     }
@@ -152,7 +166,7 @@ public class AccountsServiceTest {
         } catch (Exception e) {
             assertTrue(e.getMessage().equals("Error list is: ACCOUNT_FROM_ID_DO_NOT_HAVE_ENOUGH_MONEY"));
         }
-        verifyZeroInteractions(notificationService);
+        verifyNoInteractions(notificationService);
     }
 
 
@@ -163,7 +177,7 @@ public class AccountsServiceTest {
         } catch (Exception e) {
             assertTrue(e.getMessage().equals("Error list is: AMOUNT_TO_TRANSFER_IS_NEGATIVE_OR_ZERO"));
         }
-        verifyZeroInteractions(notificationService);
+        verifyNoInteractions(notificationService);
     }
 
     @Test
@@ -173,7 +187,7 @@ public class AccountsServiceTest {
         } catch (Exception e) {
             assertTrue(e.getMessage().equals("Error list is: AMOUNT_TO_TRANSFER_IS_NEGATIVE_OR_ZERO"));
         }
-        verifyZeroInteractions(notificationService);
+        verifyNoInteractions(notificationService);
     }
 
 
@@ -184,7 +198,7 @@ public class AccountsServiceTest {
         } catch (Exception e) {
             assertTrue(e.getMessage().equals("Error list is: AMOUNT_TO_TRANSFER_IS_NULL"));
         }
-        verifyZeroInteractions(notificationService);
+        verifyNoInteractions(notificationService);
     }
 
     @Test
@@ -195,7 +209,7 @@ public class AccountsServiceTest {
         } catch (Exception e) {
             assertTrue(e.getMessage().equals("Error list is: ACCOUNT_FROM_ID_IS_NULL"));
         }
-        verifyZeroInteractions(notificationService);
+        verifyNoInteractions(notificationService);
     }
 
     @Test
@@ -205,7 +219,127 @@ public class AccountsServiceTest {
         } catch (Exception e) {
             assertTrue(e.getMessage().equals("Error list is: TRANSFER_TO_THE_SAME_ACCOUNT"));
         }
-        verifyZeroInteractions(notificationService);
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    public void transferNettedOffsettingTransfers() {
+        List<TransferOutcome> outcomes = accountsService.transferNetted(Arrays.asList(
+                new Transfer(ACC_ID_1, ACC_ID_2, BigDecimal.valueOf(10L)),
+                new Transfer(ACC_ID_2, ACC_ID_1, BigDecimal.valueOf(25L)),
+                new Transfer(ACC_ID_1, ACC_ID_2, BigDecimal.valueOf(5L))));
+
+        assertThat(outcomes).extracting(TransferOutcome::getStatus).containsExactly(TransferOutcome.Status.APPLIED,
+                TransferOutcome.Status.APPLIED, TransferOutcome.Status.APPLIED);
+        assertThat(accountsService.getAccount(ACC_ID_1).getBalance()).isEqualByComparingTo("20.10");
+        assertThat(accountsService.getAccount(ACC_ID_2).getBalance()).isEqualByComparingTo("10.20");
+    }
+
+    @Test
+    public void transferNettedChecksBalanceInTransferOrder() {
+        List<TransferOutcome> outcomes = accountsService.transferNetted(Arrays.asList(
+                new Transfer(ACC_ID_1, ACC_ID_2, BigDecimal.valueOf(20L)),
+                new Transfer(ACC_ID_2, ACC_ID_1, BigDecimal.valueOf(20L)),
+                new Transfer(ACC_ID_1, ACC_ID_2, BigDecimal.valueOf(20L))));
+
+        assertThat(outcomes.get(0).getErrorCode()).isEqualTo("ACCOUNT_FROM_ID_DO_NOT_HAVE_ENOUGH_MONEY");
+        assertThat(outcomes.get(1).getStatus()).isEqualTo(TransferOutcome.Status.APPLIED);
+        assertThat(outcomes.get(2).getStatus()).isEqualTo(TransferOutcome.Status.APPLIED);
+        assertThat(accountsService.getAccount(ACC_ID_1).getBalance()).isEqualByComparingTo("10.10");
+        assertThat(accountsService.getAccount(ACC_ID_2).getBalance()).isEqualByComparingTo("20.20");
+    }
+
+    @Test
+    public void transferNettedRingOfAccounts() {
+        accountsService.createAccount(new Account("Id-3", BigDecimal.ZERO));
+
+        List<TransferOutcome> outcomes = accountsService.transferNetted(Arrays.asList(
+                new Transfer(ACC_ID_1, ACC_ID_2, BigDecimal.valueOf(10L)),
+                new Transfer(ACC_ID_2, "Id-3", BigDecimal.valueOf(30L)),
+                new Transfer("Id-3", ACC_ID_1, BigDecimal.valueOf(30L)),
+                new Transfer(ACC_ID_1, "Id-4", BigDecimal.valueOf(1L)),
+                new Transfer(ACC_ID_1, ACC_ID_1, BigDecimal.valueOf(1L))));
+
+        assertThat(outcomes).extracting(TransferOutcome::getErrorCode).containsExactly(null, null, null,
+                "ACCOUNT_TO_ID_NOT_FOUND", "TRANSFER_TO_THE_SAME_ACCOUNT");
+        assertThat(accountsService.getAccount(ACC_ID_1).getBalance()).isEqualByComparingTo("30.10");
+        assertThat(accountsService.getAccount(ACC_ID_2).getBalance()).isEqualByComparingTo("0.20");
+        assertThat(accountsService.getAccount("Id-3").getBalance()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    public void transferNettedWithinWindow() throws Exception {
+        CompletableFuture<TransferOutcome> first =
+                transferNettingService.submit(new Transfer(ACC_ID_1, ACC_ID_2, BigDecimal.valueOf(10L)));
+        CompletableFuture<TransferOutcome> second =
+                transferNettingService.submit(new Transfer(ACC_ID_2, ACC_ID_1, BigDecimal.valueOf(100L)));
+
+        assertThat(first.get().getStatus()).isEqualTo(TransferOutcome.Status.APPLIED);
+        assertThat(second.get().getErrorCode()).isEqualTo("ACCOUNT_FROM_ID_DO_NOT_HAVE_ENOUGH_MONEY");
+        assertThat(accountsService.getAccount(ACC_ID_1).getBalance()).isEqualByComparingTo("0.10");
+        assertThat(accountsService.getAccount(ACC_ID_2).getBalance()).isEqualByComparingTo("30.20");
+    }
+
+    @Test
+    public void transfersOverVelocityLimitAreRejected() {
+        // The restricted tier allows 10 transfers per minute
+        accountsService.createAccount(new Account("Id-restricted", BigDecimal.valueOf(100L), "restricted"));
+        for (int i = 0; i < 10; i++) {
+            accountsService.transfer("Id-restricted", ACC_ID_1, BigDecimal.ONE);
+        }
+        try {
+            accountsService.transfer("Id-restricted", ACC_ID_1, BigDecimal.ONE);
+            fail("Transfer over the velocity limit should be rejected");
+        } catch (Exception e) {
+            assertThat(e.getMessage()).isEqualTo("Error list is: VELOCITY_LIMIT_EXCEEDED");
+        }
+        List<TransferOutcome> outcomes = accountsService.transferNetted(Arrays.asList(
+                new Transfer("Id-restricted", ACC_ID_1, BigDecimal.ONE),
+                new Transfer(ACC_ID_1, "Id-restricted", BigDecimal.ONE)));
+
+        assertThat(outcomes).extracting(TransferOutcome::getErrorCode).containsExactly("VELOCITY_LIMIT_EXCEEDED", null);
+        assertThat(accountsService.getAccount("Id-restricted").getBalance()).isEqualByComparingTo("91");
+    }
+
+    @Test
+    public void transferTooLargeForVelocityCountersIsRejected() {
+        BigDecimal huge = new BigDecimal("1E+18");
+        accountsService.createAccount(new Account("Id-restricted-rich", huge.multiply(BigDecimal.TEN), "restricted"));
+        try {
+            accountsService.transfer("Id-restricted-rich", ACC_ID_1, huge);
+            fail("Transfer over the velocity limit should be rejected");
+        } catch (ValidationException e) {
+            assertThat(e.getMessage()).isEqualTo("Error list is: VELOCITY_LIMIT_EXCEEDED");
+        }
+        List<TransferOutcome> outcomes = accountsService.transferNetted(
+                Collections.singletonList(new Transfer("Id-restricted-rich", ACC_ID_1, huge)));
+
+        assertThat(outcomes).extracting(TransferOutcome::getErrorCode).containsExactly("VELOCITY_LIMIT_EXCEEDED");
+        assertThat(accountsService.getAccount("Id-restricted-rich").getBalance()).isEqualByComparingTo("1E+19");
+    }
+
+    @Test
+    public void accountWithUnknownTierIsRejected() {
+        try {
+            accountsService.createAccount(new Account("Id-unknown-tier", BigDecimal.TEN, "unlimited"));
+            fail("Account with an unknown tier should be rejected");
+        } catch (ValidationException e) {
+            assertThat(e.getMessage()).isEqualTo("Velocity tier unlimited is not configured");
+        }
+        assertThat(accountsService.getAccount("Id-unknown-tier")).isNull();
+    }
+
+    @Test
+    public void scheduledTransferIsReleasedWhenDue() throws Exception {
+        ScheduledTransfer scheduledTransfer = scheduledTransferService.schedule(new ScheduledTransfer(null,
+                ACC_ID_1, ACC_ID_2, BigDecimal.valueOf(10L), System.currentTimeMillis() + 200, 0L));
+
+        for (int i = 0; i < 50 && scheduledTransferService.getScheduledTransfer(scheduledTransfer.getId()) != null; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(scheduledTransferService.getScheduledTransfer(scheduledTransfer.getId())).isNull();
+        assertThat(accountsService.getAccount(ACC_ID_1).getBalance()).isEqualByComparingTo("0.10");
+        assertThat(accountsService.getAccount(ACC_ID_2).getBalance()).isEqualByComparingTo("30.20");
     }
 
 }
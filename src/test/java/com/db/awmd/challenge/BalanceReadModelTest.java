@@ -0,0 +1,107 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceHistogramBucket;
+import com.db.awmd.challenge.domain.BalanceSummary;
+import com.db.awmd.challenge.reporting.BalanceReadModel;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BalanceReadModelTest {
+
+    private final AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+
+    private final BalanceReadModel balanceReadModel = new BalanceReadModel(accountsRepository, 4);
+
+    @Before
+    public void before() {
+        accountsRepository.createAccount(new Account("Id-created-before", new BigDecimal("5")));
+        balanceReadModel.start();
+    }
+
+    @Test
+    public void aggregatesFollowTheChanges() {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("100.50")));
+        accountsRepository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+        accountsRepository.createAccount(new Account("Id-3", new BigDecimal("-20")));
+        accountsRepository.updateAccount("Id-2", new BigDecimal("2500"));
+        accountsRepository.updateAccount("Id-1", BigDecimal.ZERO);
+
+        BalanceSummary summary = balanceReadModel.getSummary();
+        assertThat(summary.getTotalBalance()).isEqualByComparingTo("2485");
+        assertThat(summary.getAccounts()).isEqualTo(4);
+        assertThat(summary.getNegativeBalances()).isEqualTo(1);
+        assertThat(summary.getZeroBalances()).isEqualTo(1);
+
+        List<BalanceHistogramBucket> histogram = balanceReadModel.getHistogram();
+        assertThat(histogram).extracting(BalanceHistogramBucket::getAccounts).startsWith(1L, 1L, 0L, 1L, 0L, 0L,
+                1L, 0L);
+        assertThat(histogram.get(6).getLowerBound()).isEqualByComparingTo("1000");
+        assertThat(histogram.get(6).getUpperBound()).isEqualByComparingTo("10000");
+
+        assertThat(balanceReadModel.getTopAccounts(3)).extracting(Account::getAccountId)
+                .containsExactly("Id-2", "Id-created-before", "Id-1");
+    }
+
+    @Test
+    public void lateCreationDoesNotReplaceNewerBalance() {
+        Account account = new Account("Id-late", new BigDecimal("10"));
+        balanceReadModel.accountChanged("Id-late", new BigDecimal("50"));
+        balanceReadModel.accountCreated(account);
+
+        assertThat(balanceReadModel.getSummary().getTotalBalance()).isEqualByComparingTo("55");
+        assertThat(balanceReadModel.getSummary().getAccounts()).isEqualTo(2);
+    }
+
+    @Test
+    public void concurrentTransfersKeepTheTotal() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal("1000")));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            int offset = thread;
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    Account from = accountsRepository.getAccount("Id-" + (i + offset) % 100);
+                    Account to = accountsRepository.getAccount("Id-" + (i + offset + 1) % 100);
+                    // Same lock order as the transfers, so the balances are changed one transfer at a time
+                    Account first = from.getAccountId().compareTo(to.getAccountId()) < 0 ? from : to;
+                    Account second = first == from ? to : from;
+                    first.getLock().lock();
+                    second.getLock().lock();
+                    try {
+                        accountsRepository.updateAccount(from.getAccountId(), from.withdrawMoney(BigDecimal.ONE));
+                        accountsRepository.updateAccount(to.getAccountId(), to.depositMoney(BigDecimal.ONE));
+                    } finally {
+                        second.getLock().unlock();
+                        first.getLock().unlock();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(balanceReadModel.getSummary().getTotalBalance()).isEqualByComparingTo("100005");
+        assertThat(balanceReadModel.getTopAccounts(200)).hasSize(101);
+    }
+
+    @Test
+    public void clearedAccountsAreRemoved() {
+        accountsRepository.clearAccounts();
+
+        assertThat(balanceReadModel.getSummary().getTotalBalance()).isEqualByComparingTo("0");
+        assertThat(balanceReadModel.getSummary().getAccounts()).isZero();
+        assertThat(balanceReadModel.getTopAccounts(10)).isEmpty();
+    }
+}
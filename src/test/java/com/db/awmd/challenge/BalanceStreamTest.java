@@ -0,0 +1,196 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.SubscriptionLimitException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.streaming.BalanceStreamService;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class BalanceStreamTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @After
+    public void after() {
+        accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    @Test
+    public void balanceChangesAreStreamed() throws Exception {
+        accountsService.createAccount(new Account("Stream-1", new BigDecimal("100")));
+        accountsService.createAccount(new Account("Stream-2", new BigDecimal("0")));
+
+        HttpURLConnection connection = (HttpURLConnection) URI.create("http://localhost:" + port
+                + "/v1/accounts/stream?accountIds=Stream-1,Stream-2").toURL().openConnection();
+        connection.setReadTimeout(5000);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            assertThat(connection.getContentType()).startsWith("text/event-stream");
+            awaitEvent(reader, "data:{\"accountId\":\"Stream-1\",\"balance\":100}");
+
+            accountsService.transfer("Stream-1", "Stream-2", new BigDecimal("30"));
+
+            awaitEvent(reader, "data:{\"accountId\":\"Stream-2\",\"balance\":30}");
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void slowSubscriberGetsTheLatestBalance() throws Exception {
+        AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+        BalanceStreamService balanceStreamService = new BalanceStreamService(accountsRepository, 10, 60_000, 0);
+        balanceStreamService.start();
+        try {
+            accountsRepository.createAccount(new Account("Id-1", BigDecimal.ZERO));
+            RecordingEmitter emitter = new RecordingEmitter();
+            balanceStreamService.subscribe(Collections.singletonList("Id-1"), emitter);
+            assertThat(emitter.firstSendStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            for (int i = 1; i <= 1000; i++) {
+                accountsRepository.updateAccount("Id-1", BigDecimal.valueOf(i));
+            }
+            emitter.release.countDown();
+
+            for (int i = 0; i < 50 && !emitter.hasLatestBalance("1000"); i++) {
+                Thread.sleep(100);
+            }
+            assertThat(emitter.hasLatestBalance("1000")).isTrue();
+            assertThat(emitter.balances.size()).isLessThan(10);
+            assertThat(emitter.concurrentSends.get()).isZero();
+            assertThat(balanceStreamService.getStatistics().getConflatedBalances()).isGreaterThan(0);
+        } finally {
+            balanceStreamService.shutdown();
+        }
+    }
+
+    @Test
+    public void stalledSubscribersDoNotDelayOthers() throws Exception {
+        AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+        BalanceStreamService balanceStreamService = new BalanceStreamService(accountsRepository, 100, 60_000, 0);
+        balanceStreamService.start();
+        List<RecordingEmitter> stalled = new CopyOnWriteArrayList<>();
+        try {
+            accountsRepository.createAccount(new Account("Id-1", BigDecimal.ZERO));
+            for (int i = 0; i < 20; i++) {
+                RecordingEmitter emitter = new RecordingEmitter();
+                stalled.add(emitter);
+                balanceStreamService.subscribe(Collections.singletonList("Id-1"), emitter);
+                assertThat(emitter.firstSendStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            }
+
+            RecordingEmitter reading = new RecordingEmitter();
+            reading.release.countDown();
+            balanceStreamService.subscribe(Collections.singletonList("Id-1"), reading);
+            accountsRepository.updateAccount("Id-1", BigDecimal.TEN);
+
+            for (int i = 0; i < 50 && !reading.hasLatestBalance("10"); i++) {
+                Thread.sleep(100);
+            }
+            assertThat(reading.hasLatestBalance("10")).isTrue();
+        } finally {
+            stalled.forEach(emitter -> emitter.release.countDown());
+            balanceStreamService.shutdown();
+        }
+    }
+
+    @Test
+    public void subscribersAreLimited() {
+        BalanceStreamService balanceStreamService = new BalanceStreamService(new AccountsRepositoryInMemory(),
+                1, 60_000, 0);
+        balanceStreamService.subscribe(Collections.singletonList("Id-1"));
+        try {
+            balanceStreamService.subscribe(Collections.singletonList("Id-2"));
+            fail("Second subscriber should be refused");
+        } catch (SubscriptionLimitException e) {
+            assertThat(e.getMessage()).isEqualTo("Too many subscribers, the limit is 1");
+        }
+    }
+
+    private static void awaitEvent(BufferedReader reader, String expectedLine) throws Exception {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.equals(expectedLine)) {
+                return;
+            }
+        }
+        fail("Stream ended before " + expectedLine);
+    }
+
+    /**
+     * Blocks the first send until released, like a client which does not read
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final CountDownLatch firstSendStarted = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private final List<BigDecimal> balances = new CopyOnWriteArrayList<>();
+
+        private final AtomicInteger sending = new AtomicInteger();
+
+        private final AtomicInteger concurrentSends = new AtomicInteger();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            if (sending.incrementAndGet() > 1) {
+                concurrentSends.incrementAndGet();
+            }
+            try {
+                record(builder);
+            } finally {
+                sending.decrementAndGet();
+            }
+        }
+
+        private void record(SseEventBuilder builder) {
+            firstSendStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof Account) {
+                    balances.add(((Account) data.getData()).getBalance());
+                }
+            }
+        }
+
+        private boolean hasLatestBalance(String balance) {
+            return !balances.isEmpty() && balances.get(balances.size() - 1).compareTo(new BigDecimal(balance)) == 0;
+        }
+    }
+}
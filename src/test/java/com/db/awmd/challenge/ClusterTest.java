@@ -0,0 +1,367 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.cluster.ClusterProperties;
+import com.db.awmd.challenge.cluster.ClusterTransferService;
+import com.db.awmd.challenge.cluster.ReservationService;
+import com.db.awmd.challenge.cluster.TransferDecision;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Reservation;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs several cluster nodes in one process, every node on its own localhost port.
+ * Node 1 owns the account ids below "H", node 2 the ids from "H" and node 3 the ids from "P".
+ */
+@Slf4j
+public class ClusterTest {
+
+    private static final String[] RANGE_STARTS = {"", "H", "P"};
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static LocalCluster cluster;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @BeforeClass
+    public static void startCluster() throws Exception {
+        cluster = new LocalCluster(3, folder.newFolder());
+    }
+
+    @AfterClass
+    public static void stopCluster() {
+        cluster.close();
+    }
+
+    @Test
+    public void accountsAreRoutedToTheirOwner() {
+        createAccount(0, "K-1", "100");
+
+        assertThat(cluster.accountsService(1).getAccount("K-1")).isNotNull();
+        assertThat(cluster.accountsService(0).getAccount("K-1")).isNull();
+        assertThat(getAccount(2, "K-1").getBalance()).isEqualByComparingTo("100");
+    }
+
+    @Test
+    public void transferBetweenNodesMovesTheMoney() {
+        createAccount(0, "A-2", "1000");
+        createAccount(0, "T-2", "0");
+
+        transfer(1, new Transfer("A-2", "T-2", new BigDecimal("200")));
+
+        assertThat(getAccount(2, "A-2").getBalance()).isEqualByComparingTo("800");
+        assertThat(getAccount(0, "T-2").getBalance()).isEqualByComparingTo("200");
+    }
+
+    @Test
+    public void transferBetweenNodesWithoutEnoughMoneyIsAborted() {
+        createAccount(0, "A-3", "100");
+        createAccount(0, "K-3", "0");
+
+        try {
+            transfer(2, new Transfer("A-3", "K-3", new BigDecimal("200")));
+            fail("Should have failed because of not enough money");
+        } catch (HttpClientErrorException e) {
+            assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(e.getResponseBodyAsString()).isEqualTo("Error list is: ACCOUNT_FROM_ID_DO_NOT_HAVE_ENOUGH_MONEY");
+        }
+        try {
+            transfer(2, new Transfer("A-3", "K-404", new BigDecimal("50")));
+            fail("Should have failed because of unknown account");
+        } catch (HttpClientErrorException e) {
+            assertThat(e.getResponseBodyAsString()).isEqualTo("Error list is: ACCOUNT_TO_ID_NOT_FOUND");
+        }
+
+        assertThat(getAccount(1, "A-3").getBalance()).isEqualByComparingTo("100");
+        assertThat(getAccount(1, "K-3").getBalance()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    public void inDoubtReservationIsResolvedAsPresumedAbort() throws Exception {
+        createAccount(0, "A-4", "100");
+        ReservationService participant = cluster.context(0).getBean(ReservationService.class);
+
+        participant.reserve(new Reservation("node-3-lost", "A-4", new BigDecimal("60"),
+                Reservation.Direction.DEBIT, "node-3"));
+        assertThat(cluster.accountsService(0).getAccount("A-4").getBalance()).isEqualByComparingTo("40");
+
+        for (int i = 0; i < 50 && cluster.accountsService(0).getAccount("A-4").getBalance().intValue() != 100; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(cluster.accountsService(0).getAccount("A-4").getBalance()).isEqualByComparingTo("100");
+    }
+
+    @Test
+    public void presumedAbortIsForgottenAfterRetention() throws Exception {
+        ClusterTransferService coordinator = cluster.context(1).getBean(ClusterTransferService.class);
+
+        assertThat(restTemplate.getForObject(cluster.url(1) + "/v1/cluster/decisions/{transferId}",
+                TransferDecision.class, "node-2-unknown")).isEqualTo(TransferDecision.ABORTED);
+        assertThat(coordinator.getDecisionCount()).isGreaterThan(0);
+
+        for (int i = 0; i < 50 && coordinator.getDecisionCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(coordinator.getDecisionCount()).isZero();
+        assertThat(coordinator.getDecision("node-2-unknown")).isEqualTo(TransferDecision.ABORTED);
+    }
+
+    @Test
+    public void preparedReservationSurvivesRestart() throws Exception {
+        ClusterProperties properties = new ClusterProperties();
+        properties.setEnabled(true);
+        properties.setNodeId("node-restarted");
+        properties.setJournalDir(folder.newFolder().getPath());
+        properties.setInDoubtTimeoutMillis(0);
+        AccountsService accountsService = Mockito.mock(AccountsService.class);
+
+        Mockito.when(accountsService.isApplied("A-1", "t-1DEBIT")).thenReturn(true);
+        ReservationService beforeCrash = new ReservationService(properties, accountsService, new ObjectMapper());
+        beforeCrash.recover();
+        beforeCrash.reserve(new Reservation("t-1", "A-1", BigDecimal.TEN, Reservation.Direction.DEBIT, "node-1"));
+        beforeCrash.shutdown();
+
+        ReservationService afterRestart = new ReservationService(properties, accountsService, new ObjectMapper());
+        afterRestart.recover();
+        Thread.sleep(1);
+        assertThat(afterRestart.getInDoubtReservations()).extracting(Reservation::getTransferId).containsExactly("t-1");
+        afterRestart.abort("t-1");
+        afterRestart.shutdown();
+        Mockito.verify(accountsService).deposit("A-1", BigDecimal.TEN, "t-1DEBITA");
+
+        ReservationService afterSecondRestart = new ReservationService(properties, accountsService, new ObjectMapper());
+        afterSecondRestart.recover();
+        assertThat(afterSecondRestart.getInDoubtReservations()).isEmpty();
+        afterSecondRestart.shutdown();
+    }
+
+    @Test
+    public void concurrentRetriesOfReservationWithdrawOnce() throws Exception {
+        ClusterProperties properties = new ClusterProperties();
+        properties.setEnabled(true);
+        properties.setNodeId("node-retried");
+        properties.setJournalDir(folder.newFolder().getPath());
+        AccountsService accountsService = Mockito.mock(AccountsService.class);
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(50);
+            return true;
+        }).when(accountsService).withdraw("A-5", BigDecimal.TEN, "t-5DEBIT");
+        ReservationService participant = new ReservationService(properties, accountsService, new ObjectMapper());
+        participant.recover();
+
+        ExecutorService retries = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(retries.submit(() -> participant.reserve(
+                    new Reservation("t-5", "A-5", BigDecimal.TEN, Reservation.Direction.DEBIT, "node-1"))));
+        }
+        for (Future<?> result : results) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+        retries.shutdown();
+        participant.shutdown();
+
+        Mockito.verify(accountsService, Mockito.times(1)).withdraw("A-5", BigDecimal.TEN, "t-5DEBIT");
+    }
+
+    @Test
+    public void stepsRepeatedAfterCrashMoveTheMoneyOnce() throws Exception {
+        createAccount(0, "A-6", "100");
+        AccountsService accountsService = cluster.accountsService(0);
+        ClusterProperties properties = new ClusterProperties();
+        properties.setEnabled(true);
+        properties.setNodeId("node-crashed");
+        properties.setJournalDir(folder.newFolder().getPath());
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // crash after the prepare record, before the money was held
+        Files.write(properties.journalPath("reservations"), Collections.singletonList("P\t"
+                + objectMapper.writeValueAsString(new Reservation("t-6", "A-6", new BigDecimal("60"),
+                Reservation.Direction.DEBIT, "node-1"))));
+        ReservationService afterRestart = new ReservationService(properties, accountsService, objectMapper);
+        afterRestart.recover();
+        afterRestart.abort("t-6");
+        assertThat(accountsService.getAccount("A-6").getBalance()).isEqualByComparingTo("100");
+
+        // crash after the money was returned, before the abort record
+        afterRestart.reserve(new Reservation("t-7", "A-6", new BigDecimal("30"), Reservation.Direction.DEBIT,
+                "node-1"));
+        accountsService.deposit("A-6", new BigDecimal("30"), "t-7DEBITA");
+        afterRestart.shutdown();
+        ReservationService afterSecondRestart = new ReservationService(properties, accountsService, objectMapper);
+        afterSecondRestart.recover();
+        afterSecondRestart.abort("t-7");
+        afterSecondRestart.shutdown();
+        assertThat(accountsService.getAccount("A-6").getBalance()).isEqualByComparingTo("100");
+    }
+
+    /**
+     * Throughput of transfers between random accounts sent to random nodes, with 1, 2 and 3 nodes.
+     * Run with {@code -Dcluster.benchmark=true}.
+     */
+    @Test
+    public void throughputAsNodesAreAdded() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("cluster.benchmark"));
+        int transfers = Integer.getInteger("cluster.benchmark.transfers", 20_000);
+        int clients = Integer.getInteger("cluster.benchmark.clients", 32);
+        String[] accountPrefixes = {"A", "K", "T"};
+
+        for (int nodes = 1; nodes <= 3; nodes++) {
+            try (LocalCluster benchmarkCluster = new LocalCluster(nodes, folder.newFolder())) {
+                for (String prefix : accountPrefixes) {
+                    for (int i = 0; i < 100; i++) {
+                        restTemplate.postForEntity(benchmarkCluster.url(0) + "/v1/accounts",
+                                new Account(prefix + "-" + i, new BigDecimal("1000000")), String.class);
+                    }
+                }
+
+                AtomicLong crossNode = new AtomicLong();
+                ExecutorService executor = Executors.newFixedThreadPool(clients);
+                long startNanos = System.nanoTime();
+                int nodeCount = nodes;
+                for (int i = 0; i < transfers; i++) {
+                    executor.execute(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        String from = accountPrefixes[random.nextInt(3)] + "-" + random.nextInt(100);
+                        String to = accountPrefixes[random.nextInt(3)] + "-" + random.nextInt(100);
+                        if (from.equals(to)) {
+                            return;
+                        }
+                        if (from.charAt(0) != to.charAt(0)) {
+                            crossNode.incrementAndGet();
+                        }
+                        try {
+                            restTemplate.exchange(benchmarkCluster.url(random.nextInt(nodeCount)) + "/v1/accounts/transfer",
+                                    HttpMethod.PUT, new HttpEntity<>(new Transfer(from, to, BigDecimal.ONE)), String.class);
+                        } catch (HttpStatusCodeException e) {
+                            // shed or timed out transfers are part of the measurement
+                        }
+                    });
+                }
+                executor.shutdown();
+                executor.awaitTermination(10, TimeUnit.MINUTES);
+                long elapsedNanos = System.nanoTime() - startNanos;
+                log.info("Cluster benchmark: {} nodes, {} transfers ({} between accounts of different ranges) "
+                                + "in {} ms, {} transfers/s", nodes, transfers, crossNode.get(),
+                        TimeUnit.NANOSECONDS.toMillis(elapsedNanos), (long) (transfers * 1e9 / elapsedNanos));
+            }
+        }
+    }
+
+    private void createAccount(int node, String accountId, String balance) {
+        restTemplate.postForEntity(cluster.url(node) + "/v1/accounts",
+                new Account(accountId, new BigDecimal(balance)), String.class);
+    }
+
+    private Account getAccount(int node, String accountId) {
+        return restTemplate.getForObject(cluster.url(node) + "/v1/accounts/{accountId}", Account.class, accountId);
+    }
+
+    private void transfer(int node, Transfer transfer) {
+        restTemplate.exchange(cluster.url(node) + "/v1/accounts/transfer", HttpMethod.PUT,
+                new HttpEntity<>(transfer), String.class);
+    }
+
+    /**
+     * Cluster nodes started in this process on free localhost ports
+     */
+    static class LocalCluster implements Closeable {
+
+        private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+        private final List<String> urls = new ArrayList<>();
+
+        LocalCluster(int nodes, File journalDir) throws IOException {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("cluster.enabled", true);
+            properties.put("cluster.journal-dir", journalDir.getPath());
+            properties.put("cluster.in-doubt-timeout-millis", 300);
+            properties.put("cluster.resolve-interval-millis", 100);
+            properties.put("cluster.decision-retention-millis", 500);
+            properties.put("spring.jmx.enabled", false);
+            properties.put("logging.level.com.db.awmd.challenge", "WARN");
+            properties.put("logging.level.com.db.awmd.challenge.ClusterTest", "INFO");
+            for (int node = 0; node < nodes; node++) {
+                urls.add("http://localhost:" + freePort());
+                properties.put("cluster.nodes[" + node + "].id", "node-" + (node + 1));
+                properties.put("cluster.nodes[" + node + "].url", urls.get(node));
+                if (!RANGE_STARTS[node].isEmpty()) {
+                    properties.put("cluster.nodes[" + node + "].range-start", RANGE_STARTS[node]);
+                }
+            }
+            for (int node = 0; node < nodes; node++) {
+                Map<String, Object> nodeProperties = new HashMap<>(properties);
+                nodeProperties.put("server.port", urls.get(node).substring(urls.get(node).lastIndexOf(':') + 1));
+                nodeProperties.put("cluster.node-id", "node-" + (node + 1));
+                nodeProperties.put("transfer.scheduler.journal-path",
+                        new File(journalDir, "scheduled-" + node + ".journal").getPath());
+                contexts.add(new SpringApplicationBuilder(DevChallengeApplication.class).run(
+                        nodeProperties.entrySet().stream().map(property -> "--" + property.getKey() + "=" + property.getValue())
+                                .toArray(String[]::new)));
+            }
+        }
+
+        String url(int node) {
+            return urls.get(node);
+        }
+
+        ConfigurableApplicationContext context(int node) {
+            return contexts.get(node);
+        }
+
+        AccountsService accountsService(int node) {
+            return context(node).getBean(AccountsService.class);
+        }
+
+        @Override
+        public void close() {
+            contexts.forEach(ConfigurableApplicationContext::close);
+        }
+
+        private static int freePort() throws IOException {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                return socket.getLocalPort();
+            }
+        }
+    }
+}
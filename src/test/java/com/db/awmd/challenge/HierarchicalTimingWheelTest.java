@@ -0,0 +1,63 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.scheduler.HierarchicalTimingWheel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HierarchicalTimingWheelTest {
+
+    private static final long START = 1_000_000L;
+
+    private final HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(10, 8, START);
+
+    @Test
+    public void timersExpireNotBeforeTheirExpirationAndWithinOneTick() {
+        Random random = new Random(42);
+        Map<Long, Long> expiredAt = new HashMap<>();
+        List<Long> expirations = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            long expiration = START + random.nextInt(2_000_000);
+            expirations.add(expiration);
+            wheel.schedule(expiration, expiration);
+        }
+
+        for (long now = START; now <= START + 2_000_100; now += 7) {
+            long time = now;
+            wheel.advance(now, expiration -> expiredAt.put(expiration, time));
+        }
+
+        assertThat(wheel.size()).isZero();
+        for (Long expiration : expirations) {
+            assertThat(expiredAt.get(expiration)).isBetween(expiration, expiration + 10 + 7);
+        }
+    }
+
+    @Test
+    public void cancelledTimerDoesNotExpire() {
+        HierarchicalTimingWheel.Timer<Long> cancelled = wheel.schedule(1L, START + 5_000);
+        wheel.schedule(2L, START + 5_000);
+
+        assertThat(wheel.cancel(cancelled)).isTrue();
+        assertThat(wheel.cancel(cancelled)).isFalse();
+
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(START + 10_000, expired::add);
+        assertThat(expired).containsExactly(2L);
+    }
+
+    @Test
+    public void overdueTimerExpiresOnNextAdvance() {
+        wheel.schedule(1L, START - 1_000);
+
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(START, expired::add);
+        assertThat(expired).containsExactly(1L);
+    }
+}
@@ -0,0 +1,38 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.AccountContention;
+import com.db.awmd.challenge.profiler.LockContentionProfiler;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LockContentionProfilerTest {
+
+    private final LockContentionProfiler profiler = new LockContentionProfiler(true, 16, 60_000, 2);
+
+    @Test
+    public void hotAccountsAreReportedAmongManyColdOnes() {
+        for (int i = 0; i < 100_000; i++) {
+            profiler.record("Id-cold-" + i, 1_000, false);
+            if (i % 10 == 0) {
+                profiler.record("Id-hot-1", 50_000, false);
+                profiler.record("Id-hot-2", 20_000, i % 20 == 0);
+            }
+        }
+
+        List<AccountContention> top = profiler.getTopContended(2, 2);
+        assertThat(top).extracting(AccountContention::getAccountId).containsExactly("Id-hot-1", "Id-hot-2");
+        assertThat(top.get(1).getContendedCount()).isEqualTo(10_000);
+        assertThat(top.get(1).getTimeoutCount()).isEqualTo(5_000);
+    }
+
+    @Test
+    public void disabledProfilerRecordsNothing() {
+        LockContentionProfiler disabled = new LockContentionProfiler(false, 16, 60_000, 2);
+        disabled.record("Id-1", 1_000, true);
+
+        assertThat(disabled.getTopContended(10, 2)).isEmpty();
+    }
+}
@@ -0,0 +1,230 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountChange;
+import com.db.awmd.challenge.domain.ReplicationBatch;
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.ReplicationException;
+import com.db.awmd.challenge.replication.ReplicationProperties;
+import com.db.awmd.challenge.replication.ReplicationRole;
+import com.db.awmd.challenge.replication.ReplicationService;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs a primary and its followers in one process. The second follower is started only by the test which checks
+ * that a follower which was not reachable catches up from a snapshot.
+ */
+public class ReplicationTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    private static String primaryUrl;
+
+    private static String followerUrl;
+
+    private static String lateFollowerUrl;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @BeforeClass
+    public static void startNodes() throws Exception {
+        primaryUrl = "http://localhost:" + freePort();
+        followerUrl = "http://localhost:" + freePort();
+        lateFollowerUrl = "http://localhost:" + freePort();
+        startNode(followerUrl, "follower");
+        startNode(primaryUrl, "primary", "--replication.followers[0]=" + followerUrl,
+                "--replication.followers[1]=" + lateFollowerUrl);
+    }
+
+    @AfterClass
+    public static void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    public void changesAreShippedToTheFollower() throws Exception {
+        createAccount(primaryUrl, "R-1", "1000");
+        restTemplate.postForEntity(primaryUrl + "/v1/accounts", new Account("R-2", BigDecimal.ZERO, "restricted"),
+                String.class);
+        transfer(primaryUrl, new Transfer("R-1", "R-2", new BigDecimal("300")));
+
+        awaitTrue(() -> hasBalance(followerUrl, "R-2", "300"));
+        assertThat(getAccount(followerUrl, "R-1").getBalance()).isEqualByComparingTo("700");
+        assertThat(getAccount(followerUrl, "R-2").getTier()).isEqualTo("restricted");
+        ReplicationStatus status = getStatus(followerUrl);
+        assertThat(status.getRole()).isEqualTo(ReplicationRole.FOLLOWER);
+        assertThat(status.getLagMillis()).isBetween(0L, 2000L);
+    }
+
+    @Test
+    public void followerRefusesWrites() {
+        try {
+            createAccount(followerUrl, "R-3", "100");
+            fail("Follower should refuse to create an account");
+        } catch (HttpStatusCodeException e) {
+            assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        try {
+            transfer(followerUrl, new Transfer("R-1", "R-2", BigDecimal.ONE));
+            fail("Follower should refuse to transfer");
+        } catch (HttpStatusCodeException e) {
+            assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    @Test
+    public void lateFollowerIsSynchronizedFromSnapshotAndCanBePromoted() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            createAccount(primaryUrl, "L-" + i, "100");
+        }
+        for (int i = 1; i < 100; i++) {
+            transfer(primaryUrl, new Transfer("L-0", "L-" + i, BigDecimal.ONE));
+        }
+        restTemplate.postForEntity(primaryUrl + "/v1/accounts",
+                new Account("L-restricted", BigDecimal.ZERO, "restricted"), String.class);
+
+        startNode(lateFollowerUrl, "follower");
+        awaitTrue(() -> hasBalance(lateFollowerUrl, "L-0", "1") && hasBalance(lateFollowerUrl, "L-99", "101"));
+        assertThat(getAccount(lateFollowerUrl, "L-restricted").getTier()).isEqualTo("restricted");
+        assertThat(getStatus(primaryUrl).getFollowers()).extracting(ReplicationStatus.Follower::getResyncs)
+                .doesNotContain(0L);
+
+        restTemplate.postForEntity(lateFollowerUrl + "/v1/replication/promote", null, String.class);
+        assertThat(getStatus(lateFollowerUrl).getRole()).isEqualTo(ReplicationRole.PRIMARY);
+        transfer(lateFollowerUrl, new Transfer("L-1", "L-0", BigDecimal.TEN));
+        assertThat(getAccount(lateFollowerUrl, "L-0").getBalance()).isEqualByComparingTo("11");
+        try {
+            restTemplate.postForEntity(primaryUrl + "/v1/replication/promote", null, String.class);
+            fail("Primary can not be promoted");
+        } catch (HttpStatusCodeException e) {
+            assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        }
+    }
+
+    @Test
+    public void followerKeepsTheNewestChangeOfEveryAccount() {
+        AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+        ReplicationService follower = newFollower(accountsRepository);
+
+        follower.apply(batch(0, change(2, "A", "20"), change(3, "B", "30")));
+        follower.apply(batch(0, change(1, "A", "10"), change(4, "C", "40")));
+        follower.apply(batch(0, change(2, "A", "20")));
+
+        assertThat(accountsRepository.getAccount("A").getBalance()).isEqualByComparingTo("20");
+        assertThat(accountsRepository.getAccount("C").getBalance()).isEqualByComparingTo("40");
+        assertThat(follower.getStatus().getLastSequence()).isEqualTo(4);
+        assertThat(follower.getLagMillis()).isBetween(0L, 1000L);
+        follower.promote();
+        assertThat(follower.getStatus().getLastSequence()).isGreaterThan(4);
+    }
+
+    @Test
+    public void followerRefusesBatchesOfAnOlderPrimary() {
+        ReplicationService follower = newFollower(new AccountsRepositoryInMemory());
+
+        follower.apply(batch(1, change((1L << 40) + 1, "A", "20")));
+        try {
+            follower.apply(batch(0, change(5, "A", "10")));
+            fail("Batch of the old primary should be refused");
+        } catch (ReplicationException e) {
+            assertThat(e.getMessage()).isEqualTo("Batch of epoch 0 is older than epoch 1");
+        }
+    }
+
+    private static ReplicationService newFollower(AccountsRepositoryInMemory accountsRepository) {
+        ReplicationProperties properties = new ReplicationProperties();
+        properties.setRole(ReplicationRole.FOLLOWER);
+        ReplicationService follower = new ReplicationService(properties, accountsRepository);
+        follower.start();
+        return follower;
+    }
+
+    private static ReplicationBatch batch(long epoch, AccountChange... changes) {
+        return new ReplicationBatch(epoch, Arrays.asList(changes), System.currentTimeMillis());
+    }
+
+    private static AccountChange change(long sequence, String accountId, String balance) {
+        return new AccountChange(sequence, accountId, new BigDecimal(balance), System.currentTimeMillis());
+    }
+
+    private static void startNode(String url, String role, String... args) throws IOException {
+        List<String> nodeArgs = new ArrayList<>(Arrays.asList(
+                "--server.port=" + url.substring(url.lastIndexOf(':') + 1),
+                "--replication.role=" + role,
+                "--replication.heartbeat-millis=50",
+                "--replication.retry-delay-millis=100",
+                "--replication.max-pending-changes=50",
+                "--replication.max-lag-millis=2000",
+                "--transfer.scheduler.journal-path=" + folder.newFile().getPath(),
+                "--spring.jmx.enabled=false",
+                "--logging.level.com.db.awmd.challenge=WARN"));
+        Collections.addAll(nodeArgs, args);
+        nodes.add(new SpringApplicationBuilder(DevChallengeApplication.class).run(nodeArgs.toArray(new String[0])));
+    }
+
+    private void createAccount(String url, String accountId, String balance) {
+        restTemplate.postForEntity(url + "/v1/accounts", new Account(accountId, new BigDecimal(balance)), String.class);
+    }
+
+    private Account getAccount(String url, String accountId) {
+        return restTemplate.getForObject(url + "/v1/accounts/{accountId}", Account.class, accountId);
+    }
+
+    private boolean hasBalance(String url, String accountId, String balance) {
+        try {
+            Account account = getAccount(url, accountId);
+            return account != null && account.getBalance().compareTo(new BigDecimal(balance)) == 0;
+        } catch (HttpStatusCodeException e) {
+            return false;
+        }
+    }
+
+    private ReplicationStatus getStatus(String url) {
+        return restTemplate.getForObject(url + "/v1/replication/status", ReplicationStatus.class);
+    }
+
+    private void transfer(String url, Transfer transfer) {
+        restTemplate.exchange(url + "/v1/accounts/transfer", HttpMethod.PUT, new HttpEntity<>(transfer), String.class);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
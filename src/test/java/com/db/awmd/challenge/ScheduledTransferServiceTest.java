@@ -0,0 +1,215 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.exception.ReadOnlyReplicaException;
+import com.db.awmd.challenge.exception.TransferException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ScheduledTransferService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ScheduledTransferServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AccountsService accountsService = Mockito.mock(AccountsService.class);
+
+    @Test
+    public void pendingTransfersSurviveRestart() throws Exception {
+        String journalPath = folder.getRoot().toPath().resolve("scheduled.journal").toString();
+        long nextMonth = System.currentTimeMillis() + 30L * 24 * 60 * 60 * 1000;
+
+        ScheduledTransferService service = createService(journalPath);
+        ScheduledTransfer standingOrder = service.schedule(
+                new ScheduledTransfer(null, "Id-1", "Id-2", BigDecimal.TEN, nextMonth, 1000L));
+        ScheduledTransfer cancelled = service.schedule(
+                new ScheduledTransfer(null, "Id-1", "Id-2", BigDecimal.ONE, nextMonth, 0L));
+        assertThat(service.cancel(cancelled.getId())).isTrue();
+        service.shutdown();
+
+        ScheduledTransferService restarted = createService(journalPath);
+        assertThat(restarted.getPendingCount()).isEqualTo(1);
+        assertThat(restarted.getScheduledTransfer(standingOrder.getId())).isEqualTo(standingOrder);
+        assertThat(restarted.getScheduledTransfer(cancelled.getId())).isNull();
+        restarted.shutdown();
+    }
+
+    @Test
+    public void releasedTransferIsNotTransferredAgainAfterCrash() throws Exception {
+        String journalPath = folder.getRoot().toPath().resolve("scheduled.journal").toString();
+        CountDownLatch transferring = new CountDownLatch(1);
+        CountDownLatch crashed = new CountDownLatch(1);
+        Mockito.when(accountsService.transferNetted(Mockito.anyList())).thenAnswer(invocation -> {
+            transferring.countDown();
+            crashed.await(10, TimeUnit.SECONDS);
+            List<Transfer> transfers = invocation.getArgument(0);
+            return transfers.stream().map(TransferOutcome::applied).collect(Collectors.toList());
+        });
+
+        ScheduledTransferService service = createService(journalPath);
+        long dueAt = System.currentTimeMillis() + 200;
+        ScheduledTransfer once = service.schedule(new ScheduledTransfer(null, "Id-1", "Id-2", BigDecimal.TEN, dueAt, 0L));
+        ScheduledTransfer standingOrder = service.schedule(
+                new ScheduledTransfer(null, "Id-1", "Id-2", BigDecimal.ONE, dueAt, 60_000L));
+        assertThat(transferring.await(10, TimeUnit.SECONDS)).isTrue();
+
+        ScheduledTransferService restarted = createService(journalPath);
+        assertThat(restarted.getScheduledTransfer(once.getId())).isNull();
+        assertThat(restarted.getScheduledTransfer(standingOrder.getId()).getDueAt()).isEqualTo(dueAt + 60_000L);
+        restarted.shutdown();
+        crashed.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    public void onlyTransfersOfLockedAccountsAreRetried() throws Exception {
+        String journalPath = folder.getRoot().toPath().resolve("scheduled.journal").toString();
+        Mockito.when(accountsService.transferNetted(Mockito.anyList())).thenAnswer(invocation -> {
+            List<Transfer> transfers = invocation.getArgument(0);
+            if (transfers.stream().anyMatch(transfer -> transfer.getAccountFromId().equals("Id-locked"))) {
+                throw new TransferException("Money were not transferred");
+            }
+            return transfers.stream().map(TransferOutcome::applied).collect(Collectors.toList());
+        });
+
+        ScheduledTransferService service = createService(journalPath);
+        long dueAt = System.currentTimeMillis() + 200;
+        for (int i = 0; i < 10; i++) {
+            service.schedule(new ScheduledTransfer(null, "Id-1", "Id-2", BigDecimal.ONE, dueAt, 0L));
+        }
+        ScheduledTransfer locked = service.schedule(
+                new ScheduledTransfer(null, "Id-locked", "Id-2", BigDecimal.ONE, dueAt, 0L));
+
+        for (int i = 0; i < 50 && service.getPendingCount() > 1; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(service.getPendingCount()).isEqualTo(1);
+        assertThat(service.getScheduledTransfer(locked.getId())).isNotNull();
+        service.shutdown();
+    }
+
+    @Test
+    public void transferFailedAfterReleaseIsNotSkippedAfterRestart() throws Exception {
+        Path journalPath = folder.getRoot().toPath().resolve("scheduled.journal");
+        CountDownLatch failed = new CountDownLatch(1);
+        Mockito.when(accountsService.transferNetted(Mockito.anyList())).thenAnswer(invocation -> {
+            failed.countDown();
+            throw new IllegalStateException("Account store is not available");
+        });
+
+        ScheduledTransferService service = createService(journalPath.toString());
+        long dueAt = System.currentTimeMillis() + 200;
+        ScheduledTransfer once = service.schedule(new ScheduledTransfer(null, "Id-1", "Id-2", BigDecimal.TEN, dueAt, 0L));
+        assertThat(failed.await(10, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 50 && Files.readAllLines(journalPath).stream().noneMatch(r -> r.startsWith("R")); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(service.getScheduledTransfer(once.getId())).isNotNull();
+        service.shutdown();
+
+        ScheduledTransferService restarted = createService(journalPath.toString());
+        assertThat(restarted.getScheduledTransfer(once.getId())).isNotNull();
+        restarted.shutdown();
+    }
+
+    @Test
+    public void followerNeitherSchedulesNorReleasesTransfers() throws Exception {
+        String journalPath = folder.getRoot().toPath().resolve("scheduled.journal").toString();
+        ScheduledTransferService service = createService(journalPath);
+        ScheduledTransfer once = service.schedule(new ScheduledTransfer(null, "Id-1", "Id-2", BigDecimal.TEN,
+                System.currentTimeMillis() + 100, 0L));
+
+        Mockito.doThrow(new ReadOnlyReplicaException("Node is a read only follower"))
+                .when(accountsService).checkWritable();
+        try {
+            service.schedule(new ScheduledTransfer(null, "Id-1", "Id-2", BigDecimal.ONE,
+                    System.currentTimeMillis() + 100, 0L));
+            fail("Follower should not schedule transfers");
+        } catch (ReadOnlyReplicaException e) {
+            assertThat(e.getMessage()).isEqualTo("Node is a read only follower");
+        }
+        Thread.sleep(500);
+        assertThat(service.getPendingCount()).isEqualTo(1);
+        assertThat(service.getScheduledTransfer(once.getId())).isNotNull();
+        Mockito.verify(accountsService, Mockito.never()).transferNetted(Mockito.anyList());
+        service.shutdown();
+    }
+
+    @Test
+    public void journalOfRecurringTransferIsCompacted() throws Exception {
+        Path journalPath = folder.getRoot().toPath().resolve("scheduled.journal");
+        AtomicInteger occurrences = new AtomicInteger();
+        Mockito.when(accountsService.transferNetted(Mockito.anyList())).thenAnswer(invocation -> {
+            occurrences.incrementAndGet();
+            List<Transfer> transfers = invocation.getArgument(0);
+            return transfers.stream().map(TransferOutcome::applied).collect(Collectors.toList());
+        });
+
+        ScheduledTransferService service = createService(journalPath.toString());
+        ScheduledTransfer standingOrder = service.schedule(new ScheduledTransfer(null, "Id-1", "Id-2", BigDecimal.ONE,
+                System.currentTimeMillis() + 100, 100L));
+        for (int i = 0; i < 100 && occurrences.get() < 10; i++) {
+            Thread.sleep(100);
+        }
+        service.shutdown();
+
+        assertThat(occurrences.get()).isGreaterThanOrEqualTo(10);
+        assertThat(Files.readAllLines(journalPath).size()).isLessThanOrEqualTo(5);
+        ScheduledTransferService restarted = createService(journalPath.toString());
+        assertThat(restarted.getScheduledTransfer(standingOrder.getId())).isNotNull();
+        restarted.shutdown();
+    }
+
+    @Test
+    public void virtualThreadsSettleAtMostDispatchThreadsBatches() throws Exception {
+        String journalPath = folder.getRoot().toPath().resolve("scheduled.journal").toString();
+        AtomicInteger settling = new AtomicInteger();
+        AtomicInteger maxSettling = new AtomicInteger();
+        Mockito.when(accountsService.transferNetted(Mockito.anyList())).thenAnswer(invocation -> {
+            maxSettling.accumulateAndGet(settling.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            settling.decrementAndGet();
+            List<Transfer> transfers = invocation.getArgument(0);
+            return transfers.stream().map(TransferOutcome::applied).collect(Collectors.toList());
+        });
+
+        ScheduledTransferService service = new ScheduledTransferService(accountsService, new ObjectMapper(),
+                100, 64, 1, 2, 1000, 4, journalPath, true);
+        service.start();
+        long dueAt = System.currentTimeMillis() + 200;
+        for (int i = 0; i < 10; i++) {
+            service.schedule(new ScheduledTransfer(null, "Id-1", "Id-2", BigDecimal.ONE, dueAt, 0L));
+        }
+        for (int i = 0; i < 50 && service.getPendingCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(service.getPendingCount()).isZero();
+        assertThat(maxSettling.get()).isEqualTo(2);
+        service.shutdown();
+    }
+
+    private ScheduledTransferService createService(String journalPath) {
+        ScheduledTransferService service = new ScheduledTransferService(accountsService, new ObjectMapper(),
+                100, 64, 500, 1, 1000, 4, journalPath, false);
+        service.start();
+        return service;
+    }
+}
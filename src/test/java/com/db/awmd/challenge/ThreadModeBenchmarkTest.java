@@ -0,0 +1,161 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assume;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Transfers of many concurrent clients with the requests handled on platform threads and on virtual threads.
+ * The e-mail notification is simulated by a sleep, so a transfer blocks like it would with a real mail server.
+ * Run with {@code -Dthreads.benchmark=true}.
+ */
+@Slf4j
+public class ThreadModeBenchmarkTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void platformThreadsAgainstVirtualThreads() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("threads.benchmark"));
+        int clients = Integer.getInteger("threads.benchmark.clients", 10_000);
+        int transfersPerClient = Integer.getInteger("threads.benchmark.transfers-per-client", 5);
+        long notificationMillis = Long.getLong("threads.benchmark.notification-millis", 20);
+
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            int port = freePort();
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(DevChallengeApplication.class)
+                    .run(nodeArgs(port, virtualThreads, notificationMillis))) {
+                AccountsService accountsService = context.getBean(AccountsService.class);
+                for (int i = 0; i < clients * 2; i++) {
+                    accountsService.createAccount(new Account("B-" + i, new BigDecimal("1000000")));
+                }
+
+                AtomicLongArray latencies = new AtomicLongArray(clients * transfersPerClient);
+                AtomicLong failed = new AtomicLong();
+                ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+                HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(30)).build();
+                long startNanos = System.nanoTime();
+                for (int client = 0; client < clients; client++) {
+                    int from = client * 2;
+                    clientThreads.execute(() -> {
+                        for (int i = 0; i < transfersPerClient; i++) {
+                            long requestNanos = System.nanoTime();
+                            if (!transfer(httpClient, port, "B-" + (from + i % 2), "B-" + (from + 1 - i % 2))) {
+                                failed.incrementAndGet();
+                            }
+                            latencies.set(from / 2 * transfersPerClient + i, System.nanoTime() - requestNanos);
+                        }
+                    });
+                }
+                clientThreads.shutdown();
+                clientThreads.awaitTermination(10, TimeUnit.MINUTES);
+                long elapsedNanos = System.nanoTime() - startNanos;
+
+                long[] sorted = new long[latencies.length()];
+                for (int i = 0; i < sorted.length; i++) {
+                    sorted[i] = latencies.get(i);
+                }
+                Arrays.sort(sorted);
+                log.info("Thread mode benchmark: {} threads, {} clients, {} transfers ({} failed) in {} ms, "
+                                + "{} transfers/s, latency p50 {} ms, p99 {} ms",
+                        virtualThreads ? "virtual" : "platform", clients, sorted.length, failed.get(),
+                        TimeUnit.NANOSECONDS.toMillis(elapsedNanos), (long) (sorted.length * 1e9 / elapsedNanos),
+                        TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length / 2]),
+                        TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length * 99 / 100]));
+            }
+        }
+    }
+
+    private static String[] nodeArgs(int port, boolean virtualThreads, long notificationMillis) throws IOException {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--server.port=" + port,
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--spring.profiles.active=slow_notifications",
+                "--benchmark.notification-millis=" + notificationMillis,
+                // Every client has a connection of its own and the limiter should not shed them
+                "--server.tomcat.max-connections=20000",
+                "--server.tomcat.accept-count=10000",
+                "--transfer.limiter.initial-limit=100000",
+                "--transfer.limiter.max-limit=100000",
+                "--transfer.scheduler.journal-path=" + folder.newFile().getPath(),
+                "--spring.jmx.enabled=false",
+                "--logging.level.root=WARN",
+                "--logging.level.com.db.awmd.challenge.ThreadModeBenchmarkTest=INFO"));
+        return args.toArray(new String[0]);
+    }
+
+    private static boolean transfer(HttpClient httpClient, int port, String accountFromId, String accountToId) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/v1/accounts/transfer"))
+                .timeout(Duration.ofMinutes(1))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"accountFromId\":\"" + accountFromId
+                        + "\",\"accountToId\":\"" + accountToId + "\",\"amountToTransfer\":1}"))
+                .build();
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Notification which takes as long as a call of a mail server
+     */
+    @Profile("slow_notifications")
+    @Configuration
+    public static class SlowNotificationConfiguration {
+
+        @Bean
+        @Primary
+        public NotificationService slowNotificationService(
+                @Value("${benchmark.notification-millis:20}") long notificationMillis) {
+            return (account, transferDescription) -> {
+                try {
+                    Thread.sleep(notificationMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+        }
+    }
+}
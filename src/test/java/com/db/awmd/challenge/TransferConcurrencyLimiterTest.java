@@ -0,0 +1,115 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.service.TransferConcurrencyLimiter;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final TransferConcurrencyLimiter limiter = new TransferConcurrencyLimiter(4, 2, 8, 50, 0.5, 1);
+
+    @Test
+    public void shedsTransfersAboveTheLimit() {
+        for (int i = 0; i < 4; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(4);
+
+        limiter.release(FAST, false);
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void limitGrowsWhileTransfersAreFast() {
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < limiter.getLimit(); j++) {
+                limiter.tryAcquire();
+            }
+            for (int j = limiter.getInFlight(); j > 0; j--) {
+                limiter.release(FAST, false);
+            }
+        }
+        assertThat(limiter.getLimit()).isEqualTo(8);
+    }
+
+    @Test
+    public void limitShrinksOnSlowOrDroppedTransfers() {
+        limiter.tryAcquire();
+        limiter.release(SLOW, false);
+        assertThat(limiter.getLimit()).isEqualTo(2);
+
+
+        TransferConcurrencyLimiter dropping = new TransferConcurrencyLimiter(8, 2, 8, 50, 0.5, 1);
+        long now = System.nanoTime();
+        dropping.tryAcquire();
+        dropping.release(FAST, true, now);
+        assertThat(dropping.getLimit()).isEqualTo(4);
+
+        // a transfer which is dropped in the next round trip shrinks the limit again
+        dropping.tryAcquire();
+        dropping.release(FAST, true, now + FAST + 1);
+        assertThat(dropping.getLimit()).isEqualTo(2);
+        assertThat(dropping.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void limitIsDecreasedOncePerRoundTrip() {
+        TransferConcurrencyLimiter limiter = new TransferConcurrencyLimiter(8, 1, 16, 50, 0.5, 1);
+        for (int i = 0; i < 8; i++) {
+            limiter.tryAcquire();
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            limiter.release(SLOW, false, now + i);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(4);
+
+        // a transfer which started after the decrease decreases the limit again
+        limiter.tryAcquire();
+        limiter.release(SLOW, false, now + SLOW + 1);
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    /**
+     * Simulates a service whose latency grows with the square of the transfers above its capacity (lock contention),
+     * so the throughput falls when too many transfers are admitted. Every client sends one transfer per round.
+     */
+    @Test
+    public void throughputStaysStableUnderOverload() {
+        TransferConcurrencyLimiter limiter = new TransferConcurrencyLimiter(20, 4, 1000, 50, 0.9, 1);
+        int capacity = 40;
+        int clients = 500;
+        long now = System.nanoTime();
+        double minThroughput = Double.MAX_VALUE;
+        double maxThroughput = 0;
+        int minLimit = Integer.MAX_VALUE;
+        for (int round = 0; round < 2000; round++) {
+            int admitted = 0;
+            while (admitted < clients && limiter.tryAcquire()) {
+                admitted++;
+            }
+            double load = Math.max(1.0, (double) admitted / capacity);
+            long latency = (long) (TimeUnit.MILLISECONDS.toNanos(10) * load * load);
+            now += latency;
+            for (int i = 0; i < admitted; i++) {
+                limiter.release(latency, false, now);
+            }
+            if (round >= 1000) {
+                double throughput = admitted * 1e9 / latency;
+                minThroughput = Math.min(minThroughput, throughput);
+                maxThroughput = Math.max(maxThroughput, throughput);
+                minLimit = Math.min(minLimit, limiter.getLimit());
+            }
+        }
+        // the latency threshold is reached at capacity * sqrt(5) = 89 transfers in flight
+        assertThat(minLimit).isGreaterThanOrEqualTo(70);
+        assertThat(minThroughput / maxThroughput).isGreaterThan(0.8);
+    }
+}
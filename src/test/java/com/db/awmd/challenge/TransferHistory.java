@@ -0,0 +1,102 @@
+package com.db.awmd.challenge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Timestamped history of the operations of a stress run.
+ * Every worker thread writes to its own {@link Recorder} which keeps the operations in primitive arrays,
+ * so millions of operations can be recorded without boxing.
+ */
+class TransferHistory {
+
+    static final byte TRANSFER = 0;
+    static final byte READ = 1;
+    static final byte CREATE = 2;
+
+    static final byte OK = 0;
+    static final byte REJECTED_NOT_ENOUGH_MONEY = 1;
+    static final byte REJECTED_SAME_ACCOUNT = 2;
+    static final byte TIMEOUT = 3;
+    static final byte FAILED = 4;
+
+    private final List<Recorder> recorders = new ArrayList<>();
+
+    synchronized Recorder newRecorder(int expectedOperations) {
+        Recorder recorder = new Recorder(expectedOperations);
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    List<Recorder> getRecorders() {
+        return recorders;
+    }
+
+    long count(byte kind, byte result) {
+        long count = 0;
+        for (Recorder recorder : recorders) {
+            for (int i = 0; i < recorder.size; i++) {
+                if (recorder.kind[i] == kind && recorder.result[i] == result) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    long size() {
+        return recorders.stream().mapToLong(recorder -> recorder.size).sum();
+    }
+
+    /**
+     * Operations of one thread. For a transfer {@code value} is the amount, for a read it is the balance
+     * which was read and for a create it is the initial balance (all in cents).
+     */
+    static final class Recorder {
+
+        byte[] kind;
+        byte[] result;
+        int[] from;
+        int[] to;
+        long[] value;
+        long[] invokedNanos;
+        long[] respondedNanos;
+        int size;
+
+        private Recorder(int capacity) {
+            kind = new byte[capacity];
+            result = new byte[capacity];
+            from = new int[capacity];
+            to = new int[capacity];
+            value = new long[capacity];
+            invokedNanos = new long[capacity];
+            respondedNanos = new long[capacity];
+        }
+
+        void record(byte kind, byte result, int from, int to, long value, long invokedNanos, long respondedNanos) {
+            if (size == this.kind.length) {
+                grow();
+            }
+            this.kind[size] = kind;
+            this.result[size] = result;
+            this.from[size] = from;
+            this.to[size] = to;
+            this.value[size] = value;
+            this.invokedNanos[size] = invokedNanos;
+            this.respondedNanos[size] = respondedNanos;
+            size++;
+        }
+
+        private void grow() {
+            int capacity = Math.max(16, kind.length * 2);
+            kind = Arrays.copyOf(kind, capacity);
+            result = Arrays.copyOf(result, capacity);
+            from = Arrays.copyOf(from, capacity);
+            to = Arrays.copyOf(to, capacity);
+            value = Arrays.copyOf(value, capacity);
+            invokedNanos = Arrays.copyOf(invokedNanos, capacity);
+            respondedNanos = Arrays.copyOf(respondedNanos, capacity);
+        }
+    }
+}
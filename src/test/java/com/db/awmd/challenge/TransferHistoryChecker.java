@@ -0,0 +1,228 @@
+package com.db.awmd.challenge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks a {@link TransferHistory} for linearizability and money conservation.
+ * <p>
+ * A transfer changes two independent registers (the accounts) by fixed amounts, so the history is checked
+ * account by account. For every operation the balance is bounded by the successful transfers which responded
+ * before it was invoked (they are linearized before it) plus any subset of the successful transfers which
+ * overlap it. A read outside of these bounds, a rejection for not enough money while the balance was always
+ * big enough, a final balance which is not the sum of the successful transfers or a change of the total money
+ * is reported as a violation. Both checks are O(log n) per operation, so histories of millions of operations
+ * are checked in seconds.
+ */
+class TransferHistoryChecker {
+
+    private static final int AMOUNT_BITS = 20;
+    private static final long AMOUNT_MASK = (1L << AMOUNT_BITS) - 1;
+    private static final int MAX_REPORTED = 20;
+
+    private final TransferHistory history;
+
+    private final long[] baseBalances;
+
+    private final List<String> violations = new ArrayList<>();
+
+    private long violationCount;
+
+    private EffectIndex creditsByResponse;
+    private EffectIndex creditsByInvocation;
+    private EffectIndex debitsByResponse;
+    private EffectIndex debitsByInvocation;
+
+    /**
+     * @param history      of the run, times must be relative to the start of the run
+     * @param baseBalances balances (in cents) of the accounts which existed before the run, the accounts created
+     *                     during the run take their initial balance from the history
+     */
+    TransferHistoryChecker(TransferHistory history, long[] baseBalances) {
+        this.history = history;
+        this.baseBalances = baseBalances.clone();
+    }
+
+    /**
+     * @param finalBalances balances (in cents) of all accounts after the run
+     * @return descriptions of the first violations, empty if the history is correct
+     */
+    List<String> check(long[] finalBalances) {
+        indexSuccessfulTransfers();
+        for (TransferHistory.Recorder recorder : history.getRecorders()) {
+            for (int i = 0; i < recorder.size; i++) {
+                checkOperation(recorder, i);
+            }
+        }
+
+        long totalBefore = 0;
+        long totalAfter = 0;
+        for (int account = 0; account < finalBalances.length; account++) {
+            long expected = baseBalances[account] + creditsByResponse.total(account) - debitsByResponse.total(account);
+            if (finalBalances[account] != expected) {
+                violation("Account " + account + " has final balance " + finalBalances[account]
+                        + " but successful transfers give " + expected);
+            }
+            if (finalBalances[account] < 0) {
+                violation("Account " + account + " has negative final balance " + finalBalances[account]);
+            }
+            totalBefore += baseBalances[account];
+            totalAfter += finalBalances[account];
+        }
+        if (totalBefore != totalAfter) {
+            violation("Money was not conserved: " + totalBefore + " before and " + totalAfter + " after");
+        }
+        if (violationCount > violations.size()) {
+            violations.add("... " + (violationCount - violations.size()) + " more violations");
+        }
+        return violations;
+    }
+
+    private void indexSuccessfulTransfers() {
+        int[] credits = new int[baseBalances.length];
+        int[] debits = new int[baseBalances.length];
+        for (TransferHistory.Recorder recorder : history.getRecorders()) {
+            for (int i = 0; i < recorder.size; i++) {
+                if (recorder.kind[i] == TransferHistory.CREATE) {
+                    baseBalances[recorder.to[i]] = recorder.value[i];
+                } else if (isSuccessfulTransfer(recorder, i)) {
+                    debits[recorder.from[i]]++;
+                    credits[recorder.to[i]]++;
+                }
+            }
+        }
+
+        creditsByResponse = new EffectIndex(credits);
+        creditsByInvocation = new EffectIndex(credits);
+        debitsByResponse = new EffectIndex(debits);
+        debitsByInvocation = new EffectIndex(debits);
+        for (TransferHistory.Recorder recorder : history.getRecorders()) {
+            for (int i = 0; i < recorder.size; i++) {
+                if (isSuccessfulTransfer(recorder, i)) {
+                    creditsByResponse.add(recorder.to[i], recorder.respondedNanos[i], recorder.value[i]);
+                    creditsByInvocation.add(recorder.to[i], recorder.invokedNanos[i], recorder.value[i]);
+                    debitsByResponse.add(recorder.from[i], recorder.respondedNanos[i], recorder.value[i]);
+                    debitsByInvocation.add(recorder.from[i], recorder.invokedNanos[i], recorder.value[i]);
+                }
+            }
+        }
+        creditsByResponse.seal();
+        creditsByInvocation.seal();
+        debitsByResponse.seal();
+        debitsByInvocation.seal();
+    }
+
+    private void checkOperation(TransferHistory.Recorder recorder, int i) {
+        byte kind = recorder.kind[i];
+        byte result = recorder.result[i];
+        if (result == TransferHistory.FAILED) {
+            violation("Operation " + describe(recorder, i) + " failed unexpectedly");
+        } else if (kind == TransferHistory.READ) {
+            long[] bounds = bounds(recorder.from[i], recorder.invokedNanos[i], recorder.respondedNanos[i]);
+            if (recorder.value[i] < bounds[0] || recorder.value[i] > bounds[1]) {
+                violation("Read " + describe(recorder, i) + " is outside of [" + bounds[0] + ", " + bounds[1] + "]");
+            }
+        } else if (kind == TransferHistory.TRANSFER) {
+            boolean sameAccount = recorder.from[i] == recorder.to[i];
+            if (sameAccount != (result == TransferHistory.REJECTED_SAME_ACCOUNT)) {
+                violation("Transfer " + describe(recorder, i) + " to the same account was not rejected as such");
+            }
+            if (result == TransferHistory.REJECTED_NOT_ENOUGH_MONEY) {
+                long[] bounds = bounds(recorder.from[i], recorder.invokedNanos[i], recorder.respondedNanos[i]);
+                if (bounds[0] >= recorder.value[i]) {
+                    violation("Transfer " + describe(recorder, i) + " was rejected although the balance was at least "
+                            + bounds[0]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lowest and highest balance the account may have at some point of the given interval
+     */
+    private long[] bounds(int account, long invokedNanos, long respondedNanos) {
+        long creditsBefore = creditsByResponse.sumUpTo(account, invokedNanos - 1);
+        long debitsBefore = debitsByResponse.sumUpTo(account, invokedNanos - 1);
+        long concurrentCredits = creditsByInvocation.sumUpTo(account, respondedNanos - 1) - creditsBefore;
+        long concurrentDebits = debitsByInvocation.sumUpTo(account, respondedNanos - 1) - debitsBefore;
+        long definite = baseBalances[account] + creditsBefore - debitsBefore;
+        return new long[]{definite - concurrentDebits, definite + concurrentCredits};
+    }
+
+    private static boolean isSuccessfulTransfer(TransferHistory.Recorder recorder, int i) {
+        return recorder.kind[i] == TransferHistory.TRANSFER && recorder.result[i] == TransferHistory.OK;
+    }
+
+    private static String describe(TransferHistory.Recorder recorder, int i) {
+        return "[kind=" + recorder.kind[i] + ", result=" + recorder.result[i] + ", from=" + recorder.from[i]
+                + ", to=" + recorder.to[i] + ", value=" + recorder.value[i] + ", invoked=" + recorder.invokedNanos[i]
+                + ", responded=" + recorder.respondedNanos[i] + "]";
+    }
+
+    private void violation(String description) {
+        if (violations.size() < MAX_REPORTED) {
+            violations.add(description);
+        }
+        violationCount++;
+    }
+
+    /**
+     * Amounts of the transfers per account, sorted by time with prefix sums.
+     * Time and amount are packed into one long, so the segments are sorted without boxing.
+     */
+    private static final class EffectIndex {
+
+        private final int[] offsets;
+        private final int[] filled;
+        private final long[] keys;
+        private final long[] sums;
+
+        private EffectIndex(int[] counts) {
+            offsets = new int[counts.length + 1];
+            for (int account = 0; account < counts.length; account++) {
+                offsets[account + 1] = offsets[account] + counts[account];
+            }
+            filled = Arrays.copyOf(offsets, counts.length);
+            keys = new long[offsets[counts.length]];
+            sums = new long[keys.length];
+        }
+
+        private void add(int account, long nanos, long amount) {
+            if (amount > AMOUNT_MASK || nanos >= 1L << (63 - AMOUNT_BITS)) {
+                throw new IllegalArgumentException("Amount " + amount + " or time " + nanos + " can not be packed");
+            }
+            keys[filled[account]++] = nanos << AMOUNT_BITS | amount;
+        }
+
+        private void seal() {
+            for (int account = 0; account + 1 < offsets.length; account++) {
+                Arrays.sort(keys, offsets[account], offsets[account + 1]);
+                long sum = 0;
+                for (int i = offsets[account]; i < offsets[account + 1]; i++) {
+                    sum += keys[i] & AMOUNT_MASK;
+                    sums[i] = sum;
+                }
+            }
+        }
+
+        private long sumUpTo(int account, long nanos) {
+            long bound = nanos << AMOUNT_BITS | AMOUNT_MASK;
+            int low = offsets[account];
+            int high = offsets[account + 1];
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle] <= bound) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low == offsets[account] ? 0 : sums[low - 1];
+        }
+
+        private long total(int account) {
+            return offsets[account + 1] == offsets[account] ? 0 : sums[offsets[account + 1] - 1];
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransferNettingService;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferNettingServiceTest {
+
+    private final AccountsService accountsService = Mockito.mock(AccountsService.class);
+
+    private final List<Integer> settledBatchSizes = new CopyOnWriteArrayList<>();
+
+    private final TransferNettingService transferNettingService = new TransferNettingService(accountsService,
+            500, 2, false);
+
+    public TransferNettingServiceTest() {
+        Mockito.when(accountsService.transferNetted(Mockito.anyList())).thenAnswer(invocation -> {
+            List<Transfer> transfers = invocation.getArgument(0);
+            settledBatchSizes.add(transfers.size());
+            return transfers.stream().map(TransferOutcome::applied).collect(Collectors.toList());
+        });
+    }
+
+    @After
+    public void after() {
+        transferNettingService.shutdown();
+    }
+
+    @Test
+    public void windowNeverExceedsTheBatchSize() throws Exception {
+        CompletableFuture<?>[] outcomes = new CompletableFuture<?>[5];
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = transferNettingService.submit(transfer());
+        }
+        CompletableFuture.allOf(outcomes).get(5, TimeUnit.SECONDS);
+
+        assertThat(settledBatchSizes).containsExactly(2, 2, 1);
+    }
+
+    @Test
+    public void timerOfSettledWindowDoesNotSettleTheNextOne() throws Exception {
+        transferNettingService.submit(transfer());
+        transferNettingService.submit(transfer()).get(1, TimeUnit.SECONDS);
+        Thread.sleep(250);
+
+        // The timer of the first (full) window fires 500 ms after it was opened, the second window is younger
+        CompletableFuture<TransferOutcome> late = transferNettingService.submit(transfer());
+        Thread.sleep(350);
+        assertThat(late).isNotDone();
+        assertThat(late.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(TransferOutcome.Status.APPLIED);
+    }
+
+    private static Transfer transfer() {
+        return new Transfer("Id-1", "Id-2", BigDecimal.ONE);
+    }
+}
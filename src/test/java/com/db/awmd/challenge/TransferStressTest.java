@@ -0,0 +1,236 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.TransferException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationService;
+import jakarta.validation.ValidationException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hammers {@link AccountsService#transfer} with a randomized concurrent workload (opposite pairs, transfers to the
+ * same account, a hot account, reads and accounts created during the run) and checks the recorded history with
+ * {@link TransferHistoryChecker}.
+ * <p>
+ * The size of the run is set by the system properties {@code stress.operations} and {@code stress.threads}.
+ * The default run is a quick check, a real stress run is e.g. {@code -Dstress.operations=5000000}
+ * (give the test JVM about 100 bytes of heap per operation).
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"logging.level.com.db.awmd.challenge=WARN",
+        "logging.level.com.db.awmd.challenge.TransferStressTest=INFO"})
+@Slf4j
+public class TransferStressTest {
+
+    private static final int OPERATIONS = Integer.getInteger("stress.operations", 20_000);
+    private static final int THREADS = Integer.getInteger("stress.threads",
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    private static final int INITIAL_ACCOUNTS = 64;
+    private static final int MAX_CREATED_ACCOUNTS = 256;
+    private static final int HOT_ACCOUNT = 0;
+    private static final long INITIAL_BALANCE = 100_000;
+    private static final int MAX_AMOUNT = 5_000;
+
+    @TestConfiguration
+    static class StressConfiguration {
+        @Bean
+        public NotificationService notificationService() {
+            return (account, transferDescription) -> {
+            };
+        }
+    }
+
+    @Autowired
+    private AccountsService accountsService;
+
+    private final AtomicInteger nextAccount = new AtomicInteger(INITIAL_ACCOUNTS);
+
+    private final AtomicIntegerArray createdAccounts = new AtomicIntegerArray(INITIAL_ACCOUNTS + MAX_CREATED_ACCOUNTS);
+
+    private long startNanos;
+
+    @After
+    public void after() {
+        accountsService.getAccountsRepository().clearAccounts();
+    }
+
+    @Test
+    public void concurrentTransfersAreLinearizableAndConserveMoney() throws Exception {
+        long[] baseBalances = new long[INITIAL_ACCOUNTS + MAX_CREATED_ACCOUNTS];
+        for (int account = 0; account < INITIAL_ACCOUNTS; account++) {
+            accountsService.createAccount(new Account(accountId(account), toMoney(INITIAL_BALANCE)));
+            createdAccounts.set(account, 1);
+            baseBalances[account] = INITIAL_BALANCE;
+        }
+
+        TransferHistory history = new TransferHistory();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        int operationsPerThread = OPERATIONS / THREADS;
+        for (int thread = 0; thread < THREADS; thread++) {
+            TransferHistory.Recorder recorder = history.newRecorder(operationsPerThread);
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < operationsPerThread; i++) {
+                    runRandomOperation(recorder);
+                }
+            });
+        }
+        startNanos = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.MINUTES)).isTrue();
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        long[] finalBalances = new long[baseBalances.length];
+        for (int account = 0; account < nextAccount.get() && account < finalBalances.length; account++) {
+            if (createdAccounts.get(account) == 1) {
+                finalBalances[account] = toCents(accountsService.getAccount(accountId(account)).getBalance());
+            }
+        }
+        List<String> violations = new TransferHistoryChecker(history, baseBalances).check(finalBalances);
+
+        long transfers = history.count(TransferHistory.TRANSFER, TransferHistory.OK)
+                + history.count(TransferHistory.TRANSFER, TransferHistory.REJECTED_NOT_ENOUGH_MONEY)
+                + history.count(TransferHistory.TRANSFER, TransferHistory.REJECTED_SAME_ACCOUNT)
+                + history.count(TransferHistory.TRANSFER, TransferHistory.TIMEOUT);
+        long timeouts = history.count(TransferHistory.TRANSFER, TransferHistory.TIMEOUT);
+        log.info("Stress run: {} operations on {} threads in {} ms, {} operations/s, "
+                        + "{} transfers ({} successful), timeout rate {}%",
+                history.size(), THREADS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                String.format("%.0f", history.size() * 1e9 / elapsedNanos), transfers,
+                history.count(TransferHistory.TRANSFER, TransferHistory.OK),
+                String.format("%.4f", 100.0 * timeouts / transfers));
+
+        assertThat(violations).isEmpty();
+    }
+
+    private void runRandomOperation(TransferHistory.Recorder recorder) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int dice = random.nextInt(100);
+        if (dice < 1 && nextAccount.get() < createdAccounts.length()) {
+            createAccount(recorder, random);
+        } else if (dice < 20) {
+            read(recorder, randomAccount(random));
+        } else if (dice < 22) {
+            int account = randomAccount(random);
+            transfer(recorder, account, account, random);
+        } else if (dice < 45) {
+            int other = randomOtherAccount(random, HOT_ACCOUNT);
+            if (random.nextBoolean()) {
+                transfer(recorder, HOT_ACCOUNT, other, random);
+            } else {
+                transfer(recorder, other, HOT_ACCOUNT, random);
+            }
+        } else if (dice < 70) {
+            int pair = random.nextInt(INITIAL_ACCOUNTS / 2) * 2;
+            if (random.nextBoolean()) {
+                transfer(recorder, pair, pair + 1, random);
+            } else {
+                transfer(recorder, pair + 1, pair, random);
+            }
+        } else {
+            int from = randomAccount(random);
+            transfer(recorder, from, randomOtherAccount(random, from), random);
+        }
+    }
+
+    private void createAccount(TransferHistory.Recorder recorder, ThreadLocalRandom random) {
+        int account = nextAccount.getAndIncrement();
+        if (account >= createdAccounts.length()) {
+            return;
+        }
+        long balance = random.nextLong(INITIAL_BALANCE);
+        long invoked = now();
+        accountsService.createAccount(new Account(accountId(account), toMoney(balance)));
+        createdAccounts.set(account, 1);
+        recorder.record(TransferHistory.CREATE, TransferHistory.OK, account, account, balance, invoked, now());
+    }
+
+    private void read(TransferHistory.Recorder recorder, int account) {
+        long invoked = now();
+        long balance = toCents(accountsService.getAccount(accountId(account)).getBalance());
+        recorder.record(TransferHistory.READ, TransferHistory.OK, account, account, balance, invoked, now());
+    }
+
+    private void transfer(TransferHistory.Recorder recorder, int from, int to, ThreadLocalRandom random) {
+        long amount = 1 + random.nextInt(MAX_AMOUNT);
+        byte result;
+        long invoked = now();
+        try {
+            accountsService.transfer(accountId(from), accountId(to), toMoney(amount));
+            result = TransferHistory.OK;
+        } catch (TransferException e) {
+            result = TransferHistory.TIMEOUT;
+        } catch (ValidationException e) {
+            if (e.getMessage().contains("TRANSFER_TO_THE_SAME_ACCOUNT")) {
+                result = TransferHistory.REJECTED_SAME_ACCOUNT;
+            } else if (e.getMessage().equals("Error list is: ACCOUNT_FROM_ID_DO_NOT_HAVE_ENOUGH_MONEY")) {
+                result = TransferHistory.REJECTED_NOT_ENOUGH_MONEY;
+            } else {
+                result = TransferHistory.FAILED;
+            }
+        } catch (RuntimeException e) {
+            result = TransferHistory.FAILED;
+        }
+        recorder.record(TransferHistory.TRANSFER, result, from, to, amount, invoked, now());
+    }
+
+    private int randomAccount(ThreadLocalRandom random) {
+        while (true) {
+            int account = random.nextInt(Math.min(nextAccount.get(), createdAccounts.length()));
+            if (createdAccounts.get(account) == 1) {
+                return account;
+            }
+        }
+    }
+
+    private int randomOtherAccount(ThreadLocalRandom random, int account) {
+        while (true) {
+            int other = randomAccount(random);
+            if (other != account) {
+                return other;
+            }
+        }
+    }
+
+    private long now() {
+        return System.nanoTime() - startNanos;
+    }
+
+    private static String accountId(int account) {
+        return "Stress-" + account;
+    }
+
+    private static BigDecimal toMoney(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    private static long toCents(BigDecimal money) {
+        return money.movePointRight(2).longValueExact();
+    }
+}
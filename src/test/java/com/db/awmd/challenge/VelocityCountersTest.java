@@ -0,0 +1,111 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.velocity.VelocityCounters;
+import com.db.awmd.challenge.velocity.VelocityLimiter;
+import com.db.awmd.challenge.velocity.VelocityLimits;
+import com.db.awmd.challenge.velocity.VelocityProperties;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VelocityCountersTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 86_400_000L;
+
+    private final VelocityCounters counters = new VelocityCounters(12, 24, 4);
+
+    @Test
+    public void countPerMinuteSlides() {
+        VelocityLimits limits = new VelocityLimits(3, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        long now = 10 * DAY;
+        for (int i = 0; i < 3; i++) {
+            assertThat(counters.tryRecord("Id-1", limits, 100, now + i * 10_000)).isTrue();
+        }
+        assertThat(counters.tryRecord("Id-1", limits, 100, now + 30_000)).isFalse();
+        assertThat(counters.tryRecord("Id-2", limits, 100, now + 30_000)).isTrue();
+
+        // The first transfer falls out of the minute window, the other two are still in it
+        assertThat(counters.tryRecord("Id-1", limits, 100, now + MINUTE + 5_000)).isTrue();
+        assertThat(counters.tryRecord("Id-1", limits, 100, now + MINUTE + 5_000)).isFalse();
+        assertThat(counters.getUsage("Id-1", now + MINUTE + 5_000)).containsExactly(3L, 300L, 4L, 400L);
+    }
+
+    @Test
+    public void unknownTierGetsTheLimitsOfTheDefaultTier() {
+        VelocityProperties properties = new VelocityProperties();
+        VelocityProperties.Tier standard = new VelocityProperties.Tier();
+        standard.setMaxCountPerMinute(1L);
+        properties.getTiers().put(properties.getDefaultTier(), standard);
+        VelocityLimiter limiter = new VelocityLimiter(properties);
+
+        assertThat(limiter.isKnownTier(null)).isTrue();
+        assertThat(limiter.isKnownTier("removed")).isFalse();
+        Account account = new Account("Id-1", BigDecimal.TEN, "removed");
+        assertThat(limiter.tryRecord(account, BigDecimal.ONE)).isTrue();
+        assertThat(limiter.tryRecord(account, BigDecimal.ONE)).isFalse();
+    }
+
+    @Test
+    public void amountPerDayIsLimited() {
+        VelocityLimits limits = new VelocityLimits(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, 10_000);
+        long now = 10 * DAY;
+        assertThat(counters.tryRecord("Id-1", limits, 6_000, now)).isTrue();
+        assertThat(counters.isWithinLimits("Id-1", limits, 4_001, now + MINUTE)).isFalse();
+        assertThat(counters.isWithinLimits("Id-1", limits, 4_000, now + MINUTE)).isTrue();
+        assertThat(counters.isWithinLimits("Id-1", limits, 10_000, now + DAY)).isTrue();
+    }
+
+    @Test
+    public void idleAccountsAreDropped() {
+        long now = 10 * DAY;
+        for (int i = 0; i < 10_000; i++) {
+            counters.record("Id-" + i, 100, now);
+        }
+        assertThat(counters.getTrackedAccounts()).isEqualTo(10_000);
+
+        // The accounts of the day before are dropped once the tables fill up with the accounts of the next day
+        for (int i = 0; i < 10_000; i++) {
+            counters.record("Id-next-day-" + i, 100, now + DAY);
+        }
+        assertThat(counters.getTrackedAccounts()).isEqualTo(10_000);
+        assertThat(counters.getUsage("Id-1", now + DAY)).containsExactly(0L, 0L, 0L, 0L);
+        assertThat(counters.getUsage("Id-next-day-1", now + DAY)).containsExactly(1L, 100L, 1L, 100L);
+    }
+
+    @Test
+    public void concurrentTransfersOfOneAccountAreCountedExactly() throws Exception {
+        VelocityLimits limits = new VelocityLimits(Long.MAX_VALUE, Long.MAX_VALUE, 1_000, Long.MAX_VALUE);
+        long now = 10 * DAY;
+        AtomicInteger recorded = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        if (counters.tryRecord("Id-1", limits, 1, now)) {
+                            recorded.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(recorded.get()).isEqualTo(1_000);
+        assertThat(counters.getUsage("Id-1", now)).containsExactly(1_000L, 1_000L, 1_000L, 1_000L);
+    }
+}